@@ -0,0 +1,61 @@
+package com.filestorage.auth;
+
+import com.filestorage.config.FileStorageConfiguration;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.Principal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthenticatorBenchmark {
+    private static final String SECRET = "storage-secret-key-2021";
+
+    private JwtAuthenticator jwtAuthenticator;
+    private JwtAuthenticator cachingJwtAuthenticator;
+    private ApiKeyAuthenticator apiKeyAuthenticator;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        FileStorageConfiguration.JwtCacheConfig noCache = new FileStorageConfiguration.JwtCacheConfig();
+        noCache.setEnabled(false);
+        jwtAuthenticator = new JwtAuthenticator(SECRET, noCache);
+        cachingJwtAuthenticator = new JwtAuthenticator(SECRET);
+        apiKeyAuthenticator = new ApiKeyAuthenticator(List.of("storage-api-key-001", "storage-api-key-002"));
+        token = Jwts.builder()
+            .setSubject("bench-user")
+            .claim("scope", "file:read file:write")
+            .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+            .signWith(SignatureAlgorithm.HS256, SECRET.getBytes())
+            .compact();
+        cachingJwtAuthenticator.authenticate(token);
+    }
+
+    @Benchmark
+    public Optional<Principal> jwtAuthenticate() {
+        return jwtAuthenticator.authenticate(token);
+    }
+
+    @Benchmark
+    public Optional<Principal> jwtAuthenticateCached() {
+        return cachingJwtAuthenticator.authenticate(token);
+    }
+
+    @Benchmark
+    public Optional<Principal> apiKeyAuthenticate() {
+        return apiKeyAuthenticator.authenticate("storage-api-key-002");
+    }
+}
@@ -0,0 +1,108 @@
+package com.filestorage.db;
+
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.PageCursor;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.sqlobject.SqlObjectPlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileMetadataDAOBenchmark {
+    private static final int ROWS = 20000;
+    private static final int PAGE_SIZE = 20;
+    private static final String OWNER = "bench-user";
+
+    private Handle keepAlive;
+    private FileMetadataDAO fileMetadataDAO;
+    private String knownId;
+    private PageCursor deepCursor;
+
+    @Setup
+    public void setUp() {
+        Jdbi jdbi = Jdbi.create("jdbc:h2:mem:file_storage_bench;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        jdbi.installPlugin(new SqlObjectPlugin());
+        keepAlive = jdbi.open();
+
+        // V1 schema without the MySQL-only FULLTEXT indexes, plus the V3 keyset index
+        keepAlive.execute("CREATE TABLE file_metadata (" +
+            "id VARCHAR(36) PRIMARY KEY, original_name VARCHAR(255) NOT NULL, stored_name VARCHAR(255) NOT NULL, " +
+            "mime_type VARCHAR(100) NOT NULL, file_size BIGINT NOT NULL, checksum VARCHAR(64), " +
+            "storage_location VARCHAR(500) NOT NULL, bucket_name VARCHAR(100), uploaded_by VARCHAR(255) NOT NULL, " +
+            "upload_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+            "last_accessed TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, description TEXT, tags TEXT, " +
+            "is_public BOOLEAN NOT NULL DEFAULT FALSE, content_encoding VARCHAR(50), content_language VARCHAR(20), " +
+            "expiration_date TIMESTAMP, version VARCHAR(20) NOT NULL DEFAULT '1.0')");
+        keepAlive.execute("CREATE INDEX idx_file_metadata_uploaded_by_keyset ON file_metadata(uploaded_by, upload_date, id)");
+
+        fileMetadataDAO = jdbi.onDemand(FileMetadataDAO.class);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ROWS; i++) {
+            FileMetadata metadata = newMetadata();
+            metadata.setUploadDate(new Date(now - i * 1000L));
+            fileMetadataDAO.insert(metadata);
+            if (i == ROWS / 2) {
+                knownId = metadata.getId();
+            }
+        }
+
+        List<FileMetadata> page = fileMetadataDAO.findByUploadedBy(OWNER, 1, ROWS - PAGE_SIZE - 1);
+        deepCursor = PageCursor.after(page.get(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        keepAlive.execute("DROP ALL OBJECTS");
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public FileMetadata insert() {
+        FileMetadata metadata = newMetadata();
+        fileMetadataDAO.insert(metadata);
+        return metadata;
+    }
+
+    @Benchmark
+    public Optional<FileMetadata> findById() {
+        return fileMetadataDAO.findById(knownId);
+    }
+
+    @Benchmark
+    public List<FileMetadata> firstPageOffset() {
+        return fileMetadataDAO.findByUploadedBy(OWNER, PAGE_SIZE, 0);
+    }
+
+    @Benchmark
+    public List<FileMetadata> deepPageOffset() {
+        return fileMetadataDAO.findByUploadedBy(OWNER, PAGE_SIZE, ROWS - PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FileMetadata> deepPageKeyset() {
+        return fileMetadataDAO.findByUploadedByPage(OWNER, deepCursor, PAGE_SIZE);
+    }
+
+    private static FileMetadata newMetadata() {
+        String id = UUID.randomUUID().toString();
+        FileMetadata metadata = new FileMetadata("bench.bin", id + "_bench.bin", "application/octet-stream", 1024L, OWNER);
+        metadata.setId(id);
+        metadata.setStorageLocation("file:///tmp/file-storage/" + id + "_bench.bin");
+        return metadata;
+    }
+}
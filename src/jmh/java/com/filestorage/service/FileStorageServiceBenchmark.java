@@ -0,0 +1,81 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileStorageServiceBenchmark {
+
+    @Param({"1024", "1048576", "16777216"})
+    private int fileSize;
+
+    private File basePath;
+    private byte[] content;
+    private FileStorageService fileStorageService;
+    private FileMetadata stored;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        basePath = Files.createTempDirectory("file-storage-bench").toFile();
+
+        FileStorageConfiguration.LocalStorageConfig localStorageConfig = new FileStorageConfiguration.LocalStorageConfig();
+        localStorageConfig.setBasePath(basePath.getAbsolutePath());
+
+        fileStorageService = new FileStorageService(
+            new StorageBackendRegistry(List.of(new LocalStorageBackend(localStorageConfig))),
+            new FileStorageConfiguration.PlacementConfig(),
+            new FileStorageConfiguration.FileUploadLimits(),
+            new FileStorageConfiguration.DeduplicationConfig(),
+            null,
+            null,
+            new FileStorageConfiguration.CompressionConfig()
+        );
+
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        stored = fileStorageService.uploadFile(new ByteArrayInputStream(content), "download.bin", "bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(basePath);
+    }
+
+    @Benchmark
+    public FileMetadata upload() throws IOException {
+        FileMetadata metadata = fileStorageService.uploadFile(new ByteArrayInputStream(content), "upload.bin", "bench");
+        fileStorageService.deleteFile(metadata.getStoragePath());
+        return metadata;
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        try (InputStream in = fileStorageService.downloadFile(stored.getStoragePath())) {
+            return IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+    }
+}
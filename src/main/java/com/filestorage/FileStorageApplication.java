@@ -1,14 +1,39 @@
 package com.filestorage;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.filestorage.cli.MigrateLocalLayoutCommand;
 import com.filestorage.config.FileStorageConfiguration;
 import com.filestorage.health.DatabaseHealthCheck;
 import com.filestorage.health.S3HealthCheck;
 import com.filestorage.resources.FileResource;
 import com.filestorage.resources.MetadataResource;
+import com.filestorage.resources.ResumableUploadResource;
 import com.filestorage.auth.JwtAuthFilter;
+import com.filestorage.auth.JwtAuthenticator;
+import com.filestorage.auth.JwtCacheClearTask;
 import com.filestorage.auth.ApiKeyAuthFilter;
+import com.filestorage.auth.TimedAuthenticator;
+import com.filestorage.db.BlobReferenceDAO;
+import com.filestorage.db.CachingFileMetadataDAO;
 import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.db.SegmentEntryDAO;
+import com.filestorage.db.TimedDAO;
+import com.filestorage.db.UploadSessionDAO;
+import com.filestorage.db.UserQuotaDAO;
+import com.filestorage.service.AccessTracker;
+import com.filestorage.service.ArchiveStreamer;
+import com.filestorage.service.DiskCache;
+import com.filestorage.service.ExpiredFileReaper;
 import com.filestorage.service.FileStorageService;
+import com.filestorage.service.LocalStorageBackend;
+import com.filestorage.service.PresignedUrlService;
+import com.filestorage.service.QuotaLedger;
+import com.filestorage.service.ResumableUploadService;
+import com.filestorage.service.S3StorageBackend;
+import com.filestorage.service.SegmentStorageBackend;
+import com.filestorage.service.StorageBackend;
+import com.filestorage.service.StorageBackendRegistry;
 import io.dropwizard.Application;
 import io.dropwizard.auth.AuthDynamicFeature;
 import io.dropwizard.auth.AuthValueFactoryProvider;
@@ -20,8 +45,14 @@ import io.dropwizard.setup.Environment;
 import org.jdbi.v3.core.Jdbi;
 
 import javax.ws.rs.container.ContainerRequestFilter;
+import java.io.File;
+import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class FileStorageApplication extends Application<FileStorageConfiguration> {
     
@@ -37,27 +68,84 @@ public class FileStorageApplication extends Application<FileStorageConfiguration
     @Override
     public void initialize(Bootstrap<FileStorageConfiguration> bootstrap) {
         bootstrap.addBundle(new MultiPartBundle());
+        bootstrap.addCommand(new MigrateLocalLayoutCommand(this));
     }
 
     @Override
-    public void run(FileStorageConfiguration configuration, Environment environment) {
+    public void run(FileStorageConfiguration configuration, Environment environment) throws IOException {
         final JdbiFactory factory = new JdbiFactory();
         final Jdbi jdbi = factory.build(environment, configuration.getDataSourceFactory(), "mysql");
         
-        final FileMetadataDAO fileMetadataDAO = jdbi.onDemand(FileMetadataDAO.class);
+        final FileMetadataDAO fileMetadataDAO;
+        if (configuration.getMetadataCacheConfig().isEnabled()) {
+            final CachingFileMetadataDAO cachingDAO = new CachingFileMetadataDAO(
+                TimedDAO.wrap(FileMetadataDAO.class, jdbi.onDemand(FileMetadataDAO.class), environment.metrics()),
+                configuration.getMetadataCacheConfig()
+            );
+            cachingDAO.registerMetrics(environment.metrics());
+            fileMetadataDAO = cachingDAO;
+        } else {
+            fileMetadataDAO = TimedDAO.wrap(FileMetadataDAO.class, jdbi.onDemand(FileMetadataDAO.class), environment.metrics());
+        }
+        final BlobReferenceDAO blobReferenceDAO = TimedDAO.wrap(
+            BlobReferenceDAO.class, jdbi.onDemand(BlobReferenceDAO.class), environment.metrics());
+        final ExecutorService transferExecutor = environment.lifecycle()
+            .executorService("s3-transfer-%d")
+            .minThreads(configuration.getS3Config().getTransferThreads())
+            .maxThreads(configuration.getS3Config().getTransferThreads())
+            .build();
+        final DiskCache diskCache = buildDiskCache(configuration);
+        if (diskCache != null) {
+            diskCache.registerMetrics(environment.metrics());
+        }
+        final QuotaLedger quotaLedger = new QuotaLedger(
+            TimedDAO.wrap(UserQuotaDAO.class, jdbi.onDemand(UserQuotaDAO.class), environment.metrics()),
+            configuration.getFileUploadLimits()
+        );
+        // The first backend is the default placement; local stays registered to serve file:// rows
+        final List<StorageBackend> backends = new ArrayList<>();
+        S3StorageBackend s3Backend = null;
+        if (configuration.getS3Config().isEnabled()) {
+            s3Backend = new S3StorageBackend(configuration.getS3Config(), transferExecutor, diskCache);
+            backends.add(s3Backend);
+        }
+        backends.add(new LocalStorageBackend(configuration.getLocalStorageConfig()));
+        if (configuration.getSegmentStoreConfig().isEnabled()) {
+            final SegmentStorageBackend segmentStore = new SegmentStorageBackend(
+                configuration.getSegmentStoreConfig(),
+                TimedDAO.wrap(SegmentEntryDAO.class, jdbi.onDemand(SegmentEntryDAO.class), environment.metrics())
+            );
+            environment.lifecycle().manage(segmentStore);
+            backends.add(segmentStore);
+        }
+        final StorageBackendRegistry storageBackends = new StorageBackendRegistry(backends);
         final FileStorageService fileStorageService = new FileStorageService(
-            configuration.getS3Config(), 
-            configuration.getLocalStorageConfig()
+            storageBackends,
+            configuration.getPlacementConfig(),
+            configuration.getFileUploadLimits(),
+            configuration.getDeduplicationConfig(),
+            blobReferenceDAO,
+            quotaLedger,
+            configuration.getCompressionConfig()
         );
+        fileStorageService.registerMetrics(environment.metrics());
         
         // Setup authentication chain using legacy patterns
+        final JwtAuthenticator jwtAuthenticator = new JwtAuthenticator(
+            configuration.getJwtSecret(), 
+            configuration.getJwtCacheConfig()
+        );
+        jwtAuthenticator.registerMetrics(environment.metrics());
+        environment.admin().addTask(new JwtCacheClearTask(jwtAuthenticator));
         final ContainerRequestFilter jwtFilter = new JwtAuthFilter.Builder<Principal>()
-            .setAuthenticator(new com.filestorage.auth.JwtAuthenticator(configuration.getJwtSecret()))
+            .setAuthenticator(new TimedAuthenticator<>(jwtAuthenticator,
+                environment.metrics().timer(MetricRegistry.name(JwtAuthFilter.class, "authenticate"))))
             .setPrefix("Bearer")
             .buildAuthFilter();
             
         final ContainerRequestFilter apiKeyFilter = new ApiKeyAuthFilter.Builder<Principal>()
-            .setAuthenticator(new com.filestorage.auth.ApiKeyAuthenticator(configuration.getApiKeys()))
+            .setAuthenticator(new TimedAuthenticator<>(new com.filestorage.auth.ApiKeyAuthenticator(configuration.getApiKeys()),
+                environment.metrics().timer(MetricRegistry.name(ApiKeyAuthFilter.class, "authenticate"))))
             .setPrefix("ApiKey")
             .buildAuthFilter();
             
@@ -67,12 +155,115 @@ public class FileStorageApplication extends Application<FileStorageConfiguration
         environment.jersey().register(new AuthDynamicFeature(chainedAuthFilter));
         environment.jersey().register(new AuthValueFactoryProvider.Binder<>(Principal.class));
         
+        final FileStorageConfiguration.TransferConfig transferConfig = configuration.getTransferConfig();
+        final ExecutorService fileTransferExecutor = environment.lifecycle()
+            .executorService("file-transfer-%d")
+            .minThreads(transferConfig.getMaxConcurrentTransfers())
+            .maxThreads(transferConfig.getMaxConcurrentTransfers())
+            .workQueue(new ArrayBlockingQueue<>(transferConfig.getMaxQueuedTransfers()))
+            .rejectionHandler(new ThreadPoolExecutor.AbortPolicy())
+            .build();
+        // Separate from the transfer pool, whose threads block on these uploads
+        final ExecutorService bulkUploadExecutor = environment.lifecycle()
+            .executorService("bulk-upload-%d")
+            .minThreads(transferConfig.getBulkUploadThreads())
+            .maxThreads(transferConfig.getBulkUploadThreads())
+            .build();
+        
+        final AccessTracker accessTracker = new AccessTracker(
+            fileMetadataDAO,
+            configuration.getAccessTrackingConfig().getFlushInterval(),
+            configuration.getAccessTrackingConfig().getBatchSize()
+        );
+        environment.lifecycle().manage(accessTracker);
+        environment.metrics().register(
+            MetricRegistry.name(AccessTracker.class, "pending"), 
+            (Gauge<Integer>) accessTracker::getPendingCount
+        );
+        
+        final FileStorageConfiguration.ReaperConfig reaperConfig = configuration.getReaperConfig();
+        if (reaperConfig.isEnabled()) {
+            final ExecutorService reaperDeletePool = environment.lifecycle()
+                .executorService("reaper-delete-%d")
+                .minThreads(reaperConfig.getDeleteThreads())
+                .maxThreads(reaperConfig.getDeleteThreads())
+                .build();
+            environment.lifecycle().manage(new ExpiredFileReaper(
+                fileMetadataDAO,
+                fileStorageService,
+                reaperConfig,
+                reaperDeletePool,
+                environment.metrics()
+            ));
+        }
+        
+        final ExecutorService archivePrefetchExecutor = environment.lifecycle()
+            .executorService("archive-prefetch-%d")
+            .minThreads(configuration.getArchiveConfig().getPrefetchThreads())
+            .maxThreads(configuration.getArchiveConfig().getPrefetchThreads())
+            .build();
+        final ArchiveStreamer archiveStreamer = new ArchiveStreamer(
+            fileStorageService,
+            archivePrefetchExecutor,
+            configuration.getArchiveConfig()
+        );
+        
+        final PresignedUrlService presignedUrlService = new PresignedUrlService(
+            s3Backend,
+            fileStorageService,
+            quotaLedger,
+            configuration.getFileUploadLimits(),
+            configuration.getPresignConfig()
+        );
+        environment.lifecycle().manage(presignedUrlService);
+        
         // Register resources
-        environment.jersey().register(new FileResource(fileMetadataDAO, fileStorageService));
+        final FileResource fileResource = new FileResource(
+            fileMetadataDAO, 
+            fileStorageService, 
+            accessTracker,
+            fileTransferExecutor,
+            transferConfig.getRetryAfter().toSeconds(),
+            bulkUploadExecutor,
+            transferConfig.getMaxBulkFiles(),
+            archiveStreamer,
+            configuration.getHttpCacheConfig(),
+            presignedUrlService
+        );
+        fileResource.registerMetrics(environment.metrics());
+        environment.jersey().register(fileResource);
         environment.jersey().register(new MetadataResource(fileMetadataDAO));
         
+        final ResumableUploadService resumableUploadService = new ResumableUploadService(
+            TimedDAO.wrap(UploadSessionDAO.class, jdbi.onDemand(UploadSessionDAO.class), environment.metrics()),
+            fileStorageService,
+            storageBackends,
+            quotaLedger,
+            configuration.getFileUploadLimits(),
+            configuration.getResumableUploadConfig()
+        );
+        environment.lifecycle().manage(resumableUploadService);
+        environment.jersey().register(new ResumableUploadResource(
+            resumableUploadService,
+            fileStorageService,
+            fileMetadataDAO,
+            fileTransferExecutor,
+            transferConfig.getRetryAfter().toSeconds()
+        ));
+        
         // Register health checks
         environment.healthChecks().register("database", new DatabaseHealthCheck(jdbi));
         environment.healthChecks().register("s3", new S3HealthCheck(configuration.getS3Config()));
     }
+    
+    private DiskCache buildDiskCache(FileStorageConfiguration configuration) throws IOException {
+        final FileStorageConfiguration.DiskCacheConfig cacheConfig = configuration.getDiskCacheConfig();
+        if (!cacheConfig.isEnabled() || !configuration.getS3Config().isEnabled()) {
+            return null;
+        }
+        final File directory = cacheConfig.getDirectory() != null
+            ? new File(cacheConfig.getDirectory())
+            : new File(configuration.getLocalStorageConfig().getBasePath(), ".s3-cache");
+        return new DiskCache(directory, cacheConfig.getMaxBytes(), cacheConfig.getMaxObjectSize());
+    }
 }
\ No newline at end of file
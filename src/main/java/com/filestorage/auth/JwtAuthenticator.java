@@ -1,20 +1,70 @@
 package com.filestorage.auth;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.filestorage.config.FileStorageConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import io.dropwizard.auth.Authenticator;
 import io.jsonwebtoken.*;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Verifies HMAC-signed JWTs. Successful verifications are cached by token digest until the
+ * token expires or the cache TTL passes; evicting an entry only forces the next request to
+ * verify again, it does not revoke the token.
+ */
 public class JwtAuthenticator implements Authenticator<String, Principal> {
     private final String secret;
+    private final Cache<HashCode, VerifiedToken> verifiedTokens;
 
     public JwtAuthenticator(String secret) {
+        this(secret, new FileStorageConfiguration.JwtCacheConfig());
+    }
+
+    public JwtAuthenticator(String secret, FileStorageConfiguration.JwtCacheConfig cacheConfig) {
         this.secret = secret;
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(cacheConfig.isEnabled() ? cacheConfig.getMaximumSize() : 0)
+                .expireAfterWrite(cacheConfig.getMaxTtl().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        String prefix = MetricRegistry.name(JwtAuthenticator.class, "cache");
+        metrics.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) verifiedTokens::size);
+        metrics.register(MetricRegistry.name(prefix, "hits"), (Gauge<Long>) () -> verifiedTokens.stats().hitCount());
+        metrics.register(MetricRegistry.name(prefix, "misses"), (Gauge<Long>) () -> verifiedTokens.stats().missCount());
+        metrics.register(MetricRegistry.name(prefix, "hit-rate"), (Gauge<Double>) () -> verifiedTokens.stats().hitRate());
+    }
+
+    public void evict(String token) {
+        verifiedTokens.invalidate(digest(token));
+    }
+
+    public void clear() {
+        verifiedTokens.invalidateAll();
     }
 
     @Override
     public Optional<Principal> authenticate(String token) {
+        HashCode key = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return Optional.of(cached.principal);
+            }
+            verifiedTokens.invalidate(key);
+        }
+
         try {
             Claims claims = Jwts.parser()
                     .setSigningKey(secret.getBytes())
@@ -26,13 +76,34 @@ public class JwtAuthenticator implements Authenticator<String, Principal> {
             
             if (subject != null && scope != null && 
                 (scope.contains("file:read") || scope.contains("file:write"))) {
-                return Optional.of(new SimplePrincipal(subject));
+                Principal principal = new SimplePrincipal(subject);
+                // Only successful verifications are cached, so garbage tokens cannot flood the cache
+                verifiedTokens.put(key, new VerifiedToken(principal, claims.getExpiration()));
+                return Optional.of(principal);
             }
         } catch (Exception e) {
             // Token verification failed
         }
         return Optional.empty();
     }
+
+    private static HashCode digest(String token) {
+        return Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    }
+
+    private static class VerifiedToken {
+        private final Principal principal;
+        private final Date expiration;
+
+        VerifiedToken(Principal principal, Date expiration) {
+            this.principal = principal;
+            this.expiration = expiration;
+        }
+
+        boolean isExpired() {
+            return expiration != null && System.currentTimeMillis() >= expiration.getTime();
+        }
+    }
     
     private static class SimplePrincipal implements Principal {
         private final String name;
@@ -51,4 +122,4 @@ public class JwtAuthenticator implements Authenticator<String, Principal> {
             return name;
         }
     }
-}
\ No newline at end of file
+}
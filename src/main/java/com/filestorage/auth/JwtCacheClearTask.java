@@ -0,0 +1,35 @@
+package com.filestorage.auth;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Empties the JWT verification cache, or evicts the given {@code token} parameters. Evicted
+ * tokens are verified again on their next use; this does not revoke them.
+ */
+public class JwtCacheClearTask extends Task {
+    private final JwtAuthenticator jwtAuthenticator;
+
+    public JwtCacheClearTask(JwtAuthenticator jwtAuthenticator) {
+        super("jwt-cache-clear");
+        this.jwtAuthenticator = jwtAuthenticator;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) {
+        List<String> tokens = parameters.get("token");
+        if (tokens == null || tokens.isEmpty()) {
+            jwtAuthenticator.clear();
+            output.println("Cleared the JWT verification cache");
+            return;
+        }
+
+        for (String token : tokens) {
+            jwtAuthenticator.evict(token);
+        }
+        output.println("Evicted " + tokens.size() + " token(s) from the JWT verification cache");
+    }
+}
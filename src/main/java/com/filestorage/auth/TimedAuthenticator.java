@@ -0,0 +1,25 @@
+package com.filestorage.auth;
+
+import com.codahale.metrics.Timer;
+import io.dropwizard.auth.AuthenticationException;
+import io.dropwizard.auth.Authenticator;
+
+import java.security.Principal;
+import java.util.Optional;
+
+public class TimedAuthenticator<C> implements Authenticator<C, Principal> {
+    private final Authenticator<C, Principal> delegate;
+    private final Timer timer;
+
+    public TimedAuthenticator(Authenticator<C, Principal> delegate, Timer timer) {
+        this.delegate = delegate;
+        this.timer = timer;
+    }
+
+    @Override
+    public Optional<Principal> authenticate(C credentials) throws AuthenticationException {
+        try (Timer.Context ignored = timer.time()) {
+            return delegate.authenticate(credentials);
+        }
+    }
+}
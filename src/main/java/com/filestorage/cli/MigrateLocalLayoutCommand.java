@@ -0,0 +1,66 @@
+package com.filestorage.cli;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.BlobReferenceDAO;
+import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.service.LocalLayoutMigrator;
+import com.filestorage.service.LocalStorageLayout;
+import io.dropwizard.Application;
+import io.dropwizard.cli.EnvironmentCommand;
+import io.dropwizard.jdbi3.JdbiFactory;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MigrateLocalLayoutCommand extends EnvironmentCommand<FileStorageConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrateLocalLayoutCommand.class);
+
+    public MigrateLocalLayoutCommand(Application<FileStorageConfiguration> application) {
+        super(application, "migrate-local-layout", "Moves flat local files into the sharded directory layout");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--batch-size")
+            .dest("batchSize")
+            .type(Integer.class)
+            .setDefault(500)
+            .help("Files to relink before each grace period");
+        subparser.addArgument("--grace-seconds")
+            .dest("graceSeconds")
+            .type(Integer.class)
+            .setDefault(60)
+            .help("Seconds to keep the flat names after repointing metadata");
+        subparser.addArgument("--dry-run")
+            .dest("dryRun")
+            .action(Arguments.storeTrue())
+            .help("Only report the configured layout");
+    }
+
+    @Override
+    protected void run(Environment environment, Namespace namespace, FileStorageConfiguration configuration) throws Exception {
+        LocalStorageLayout layout = new LocalStorageLayout(configuration.getLocalStorageConfig());
+        if (namespace.getBoolean("dryRun")) {
+            LOGGER.info("Would migrate {} into {} shard levels", layout.getBasePath(),
+                configuration.getLocalStorageConfig().getShardLevels());
+            return;
+        }
+
+        Jdbi jdbi = new JdbiFactory().build(environment, configuration.getDataSourceFactory(), "mysql-migration");
+        LocalLayoutMigrator migrator = new LocalLayoutMigrator(
+            layout,
+            jdbi.onDemand(FileMetadataDAO.class),
+            jdbi.onDemand(BlobReferenceDAO.class),
+            namespace.getInt("batchSize"),
+            Duration.seconds(namespace.getInt("graceSeconds"))
+        );
+        // The migrator logs the result
+        migrator.migrate();
+    }
+}
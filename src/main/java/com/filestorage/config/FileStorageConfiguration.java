@@ -3,10 +3,13 @@ package com.filestorage.config;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class FileStorageConfiguration extends Configuration {
     
@@ -24,11 +27,53 @@ public class FileStorageConfiguration extends Configuration {
     @JsonProperty("jwtSecret")
     private String jwtSecret = "storage-secret-key-2021";
     
+    @JsonProperty("jwtCache")
+    private JwtCacheConfig jwtCacheConfig = new JwtCacheConfig();
+    
     @JsonProperty("apiKeys")
     private List<String> apiKeys = List.of("storage-api-key-001", "storage-api-key-002");
     
     @JsonProperty("fileUploadLimits")
     private FileUploadLimits fileUploadLimits = new FileUploadLimits();
+    
+    @JsonProperty("s3DiskCache")
+    private DiskCacheConfig diskCacheConfig = new DiskCacheConfig();
+    
+    @JsonProperty("accessTracking")
+    private AccessTrackingConfig accessTrackingConfig = new AccessTrackingConfig();
+    
+    @JsonProperty("reaper")
+    private ReaperConfig reaperConfig = new ReaperConfig();
+    
+    @JsonProperty("transfers")
+    private TransferConfig transferConfig = new TransferConfig();
+    
+    @JsonProperty("deduplication")
+    private DeduplicationConfig deduplicationConfig = new DeduplicationConfig();
+    
+    @JsonProperty("metadataCache")
+    private MetadataCacheConfig metadataCacheConfig = new MetadataCacheConfig();
+    
+    @JsonProperty("compression")
+    private CompressionConfig compressionConfig = new CompressionConfig();
+    
+    @JsonProperty("archive")
+    private ArchiveConfig archiveConfig = new ArchiveConfig();
+    
+    @JsonProperty("httpCache")
+    private HttpCacheConfig httpCacheConfig = new HttpCacheConfig();
+    
+    @JsonProperty("placement")
+    private PlacementConfig placementConfig = new PlacementConfig();
+    
+    @JsonProperty("segmentStore")
+    private SegmentStoreConfig segmentStoreConfig = new SegmentStoreConfig();
+    
+    @JsonProperty("presign")
+    private PresignConfig presignConfig = new PresignConfig();
+    
+    @JsonProperty("resumableUploads")
+    private ResumableUploadConfig resumableUploadConfig = new ResumableUploadConfig();
 
     public DataSourceFactory getDataSourceFactory() {
         return database;
@@ -62,6 +107,14 @@ public class FileStorageConfiguration extends Configuration {
         this.jwtSecret = jwtSecret;
     }
 
+    public JwtCacheConfig getJwtCacheConfig() {
+        return jwtCacheConfig;
+    }
+
+    public void setJwtCacheConfig(JwtCacheConfig jwtCacheConfig) {
+        this.jwtCacheConfig = jwtCacheConfig;
+    }
+
     public List<String> getApiKeys() {
         return apiKeys;
     }
@@ -78,6 +131,110 @@ public class FileStorageConfiguration extends Configuration {
         this.fileUploadLimits = fileUploadLimits;
     }
 
+    public DiskCacheConfig getDiskCacheConfig() {
+        return diskCacheConfig;
+    }
+
+    public void setDiskCacheConfig(DiskCacheConfig diskCacheConfig) {
+        this.diskCacheConfig = diskCacheConfig;
+    }
+
+    public AccessTrackingConfig getAccessTrackingConfig() {
+        return accessTrackingConfig;
+    }
+
+    public void setAccessTrackingConfig(AccessTrackingConfig accessTrackingConfig) {
+        this.accessTrackingConfig = accessTrackingConfig;
+    }
+
+    public ReaperConfig getReaperConfig() {
+        return reaperConfig;
+    }
+
+    public void setReaperConfig(ReaperConfig reaperConfig) {
+        this.reaperConfig = reaperConfig;
+    }
+
+    public TransferConfig getTransferConfig() {
+        return transferConfig;
+    }
+
+    public void setTransferConfig(TransferConfig transferConfig) {
+        this.transferConfig = transferConfig;
+    }
+
+    public DeduplicationConfig getDeduplicationConfig() {
+        return deduplicationConfig;
+    }
+
+    public void setDeduplicationConfig(DeduplicationConfig deduplicationConfig) {
+        this.deduplicationConfig = deduplicationConfig;
+    }
+
+    public MetadataCacheConfig getMetadataCacheConfig() {
+        return metadataCacheConfig;
+    }
+
+    public void setMetadataCacheConfig(MetadataCacheConfig metadataCacheConfig) {
+        this.metadataCacheConfig = metadataCacheConfig;
+    }
+
+    public CompressionConfig getCompressionConfig() {
+        return compressionConfig;
+    }
+
+    public void setCompressionConfig(CompressionConfig compressionConfig) {
+        this.compressionConfig = compressionConfig;
+    }
+
+    public ArchiveConfig getArchiveConfig() {
+        return archiveConfig;
+    }
+
+    public void setArchiveConfig(ArchiveConfig archiveConfig) {
+        this.archiveConfig = archiveConfig;
+    }
+
+    public HttpCacheConfig getHttpCacheConfig() {
+        return httpCacheConfig;
+    }
+
+    public void setHttpCacheConfig(HttpCacheConfig httpCacheConfig) {
+        this.httpCacheConfig = httpCacheConfig;
+    }
+    
+    public PlacementConfig getPlacementConfig() {
+        return placementConfig;
+    }
+    
+    public void setPlacementConfig(PlacementConfig placementConfig) {
+        this.placementConfig = placementConfig;
+    }
+    
+    public SegmentStoreConfig getSegmentStoreConfig() {
+        return segmentStoreConfig;
+    }
+    
+    public void setSegmentStoreConfig(SegmentStoreConfig segmentStoreConfig) {
+        this.segmentStoreConfig = segmentStoreConfig;
+    }
+    
+    public PresignConfig getPresignConfig() {
+        return presignConfig;
+    }
+    
+    public void setPresignConfig(PresignConfig presignConfig) {
+        this.presignConfig = presignConfig;
+    }
+    
+    public ResumableUploadConfig getResumableUploadConfig() {
+        return resumableUploadConfig;
+    }
+    
+    public void setResumableUploadConfig(ResumableUploadConfig resumableUploadConfig) {
+        this.resumableUploadConfig = resumableUploadConfig;
+    }
+
     public static class S3Config {
         @JsonProperty("accessKey")
         private String accessKey = "test-access-key";
@@ -96,6 +253,15 @@ public class FileStorageConfiguration extends Configuration {
         
         @JsonProperty("enabled")
         private boolean enabled = true;
+        
+        @JsonProperty("multipartPartSize")
+        private int multipartPartSize = 8 * 1024 * 1024; // 8MB
+        
+        @JsonProperty("multipartConcurrency")
+        private int multipartConcurrency = 4;
+        
+        @JsonProperty("transferThreads")
+        private int transferThreads = 16;
 
         public String getAccessKey() { return accessKey; }
         public void setAccessKey(String accessKey) { this.accessKey = accessKey; }
@@ -114,6 +280,15 @@ public class FileStorageConfiguration extends Configuration {
         
         public boolean isEnabled() { return enabled; }
         public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMultipartPartSize() { return multipartPartSize; }
+        public void setMultipartPartSize(int multipartPartSize) { this.multipartPartSize = multipartPartSize; }
+        
+        public int getMultipartConcurrency() { return multipartConcurrency; }
+        public void setMultipartConcurrency(int multipartConcurrency) { this.multipartConcurrency = multipartConcurrency; }
+        
+        public int getTransferThreads() { return transferThreads; }
+        public void setTransferThreads(int transferThreads) { this.transferThreads = transferThreads; }
     }
 
     public static class LocalStorageConfig {
@@ -122,12 +297,24 @@ public class FileStorageConfiguration extends Configuration {
         
         @JsonProperty("enabled")
         private boolean enabled = true;
+        
+        @JsonProperty("shardLevels")
+        private int shardLevels = 2;
+        
+        @JsonProperty("shardWidth")
+        private int shardWidth = 2;
 
         public String getBasePath() { return basePath; }
         public void setBasePath(String basePath) { this.basePath = basePath; }
         
         public boolean isEnabled() { return enabled; }
         public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getShardLevels() { return shardLevels; }
+        public void setShardLevels(int shardLevels) { this.shardLevels = shardLevels; }
+        
+        public int getShardWidth() { return shardWidth; }
+        public void setShardWidth(int shardWidth) { this.shardWidth = shardWidth; }
     }
 
     public static class FileUploadLimits {
@@ -143,6 +330,12 @@ public class FileStorageConfiguration extends Configuration {
             "application/pdf", "text/plain", "application/json",
             "application/xml", "application/zip", "application/octet-stream"
         );
+        
+        @JsonProperty("mimeSniffBytes")
+        private int mimeSniffBytes = 8 * 1024; // Only this much of the stream is inspected
+        
+        @JsonProperty("quotaCacheTtl")
+        private Duration quotaCacheTtl = Duration.minutes(1);
 
         public long getMaxFileSize() { return maxFileSize; }
         public void setMaxFileSize(long maxFileSize) { this.maxFileSize = maxFileSize; }
@@ -152,5 +345,380 @@ public class FileStorageConfiguration extends Configuration {
         
         public List<String> getAllowedMimeTypes() { return allowedMimeTypes; }
         public void setAllowedMimeTypes(List<String> allowedMimeTypes) { this.allowedMimeTypes = allowedMimeTypes; }
+        
+        public int getMimeSniffBytes() { return mimeSniffBytes; }
+        public void setMimeSniffBytes(int mimeSniffBytes) { this.mimeSniffBytes = mimeSniffBytes; }
+        
+        public Duration getQuotaCacheTtl() { return quotaCacheTtl; }
+        public void setQuotaCacheTtl(Duration quotaCacheTtl) { this.quotaCacheTtl = quotaCacheTtl; }
+    }
+
+    public static class DeduplicationConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+        
+        // No longer used, reference counts are kept consistent by the database; still accepted so existing configs load
+        @Deprecated
+        @JsonProperty("lockStripes")
+        private int lockStripes = 64;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getLockStripes() { return lockStripes; }
+        public void setLockStripes(int lockStripes) { this.lockStripes = lockStripes; }
+    }
+
+    public static class MetadataCacheConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = true;
+        
+        @JsonProperty("maximumSize")
+        private long maximumSize = 10000;
+        
+        @JsonProperty("ttl")
+        private Duration ttl = Duration.seconds(30);
+        
+        @JsonProperty("negativeTtl")
+        private Duration negativeTtl = Duration.seconds(2);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public long getMaximumSize() { return maximumSize; }
+        public void setMaximumSize(long maximumSize) { this.maximumSize = maximumSize; }
+        
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+        
+        public Duration getNegativeTtl() { return negativeTtl; }
+        public void setNegativeTtl(Duration negativeTtl) { this.negativeTtl = negativeTtl; }
+    }
+
+    public static class JwtCacheConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = true;
+        
+        @JsonProperty("maximumSize")
+        private long maximumSize = 10000;
+        
+        @JsonProperty("maxTtl")
+        private Duration maxTtl = Duration.minutes(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public long getMaximumSize() { return maximumSize; }
+        public void setMaximumSize(long maximumSize) { this.maximumSize = maximumSize; }
+        
+        public Duration getMaxTtl() { return maxTtl; }
+        public void setMaxTtl(Duration maxTtl) { this.maxTtl = maxTtl; }
+    }
+
+    public static class DiskCacheConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+        
+        @JsonProperty("directory")
+        private String directory = null; // Defaults to <localStorage.basePath>/.s3-cache
+        
+        @JsonProperty("maxBytes")
+        private long maxBytes = 10L * 1024 * 1024 * 1024; // 10GB
+        
+        @JsonProperty("maxObjectSize")
+        private long maxObjectSize = 64 * 1024 * 1024; // 64MB
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        
+        public long getMaxBytes() { return maxBytes; }
+        public void setMaxBytes(long maxBytes) { this.maxBytes = maxBytes; }
+        
+        public long getMaxObjectSize() { return maxObjectSize; }
+        public void setMaxObjectSize(long maxObjectSize) { this.maxObjectSize = maxObjectSize; }
+    }
+
+    public static class AccessTrackingConfig {
+        @JsonProperty("flushInterval")
+        private Duration flushInterval = Duration.seconds(30);
+        
+        @JsonProperty("batchSize")
+        private int batchSize = 500;
+
+        public Duration getFlushInterval() { return flushInterval; }
+        public void setFlushInterval(Duration flushInterval) { this.flushInterval = flushInterval; }
+        
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+    }
+
+    public static class ReaperConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = true;
+        
+        @JsonProperty("interval")
+        private Duration interval = Duration.minutes(5);
+        
+        @JsonProperty("batchSize")
+        private int batchSize = 1000;
+        
+        @JsonProperty("maxFilesPerSecond")
+        private double maxFilesPerSecond = 500;
+        
+        @JsonProperty("deleteThreads")
+        private int deleteThreads = 8;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+        
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        
+        public double getMaxFilesPerSecond() { return maxFilesPerSecond; }
+        public void setMaxFilesPerSecond(double maxFilesPerSecond) { this.maxFilesPerSecond = maxFilesPerSecond; }
+        
+        public int getDeleteThreads() { return deleteThreads; }
+        public void setDeleteThreads(int deleteThreads) { this.deleteThreads = deleteThreads; }
+    }
+
+    public static class TransferConfig {
+        @JsonProperty("maxConcurrentTransfers")
+        private int maxConcurrentTransfers = 64;
+        
+        @JsonProperty("maxQueuedTransfers")
+        private int maxQueuedTransfers = 128;
+        
+        @JsonProperty("retryAfter")
+        private Duration retryAfter = Duration.seconds(5);
+        
+        @JsonProperty("bulkUploadThreads")
+        private int bulkUploadThreads = 8;
+        
+        @JsonProperty("maxBulkFiles")
+        private int maxBulkFiles = 1000;
+
+        public int getMaxConcurrentTransfers() { return maxConcurrentTransfers; }
+        public void setMaxConcurrentTransfers(int maxConcurrentTransfers) { this.maxConcurrentTransfers = maxConcurrentTransfers; }
+        
+        public int getMaxQueuedTransfers() { return maxQueuedTransfers; }
+        public void setMaxQueuedTransfers(int maxQueuedTransfers) { this.maxQueuedTransfers = maxQueuedTransfers; }
+        
+        public Duration getRetryAfter() { return retryAfter; }
+        public void setRetryAfter(Duration retryAfter) { this.retryAfter = retryAfter; }
+        
+        public int getBulkUploadThreads() { return bulkUploadThreads; }
+        public void setBulkUploadThreads(int bulkUploadThreads) { this.bulkUploadThreads = bulkUploadThreads; }
+        
+        public int getMaxBulkFiles() { return maxBulkFiles; }
+        public void setMaxBulkFiles(int maxBulkFiles) { this.maxBulkFiles = maxBulkFiles; }
+    }
+
+    public static class CompressionConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+        
+        @JsonProperty("algorithm")
+        private String algorithm = "gzip"; // gzip or zstd
+        
+        @JsonProperty("level")
+        private int level = 6;
+        
+        @JsonProperty("mimeTypes")
+        private List<String> mimeTypes = List.of("text/*", "application/json", "application/xml");
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getAlgorithm() { return algorithm; }
+        public void setAlgorithm(String algorithm) { this.algorithm = algorithm; }
+        
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+        
+        public List<String> getMimeTypes() { return mimeTypes; }
+        public void setMimeTypes(List<String> mimeTypes) { this.mimeTypes = mimeTypes; }
+    }
+
+    public static class ArchiveConfig {
+        @JsonProperty("maxFiles")
+        private int maxFiles = 10000;
+        
+        @JsonProperty("prefetchDepth")
+        private int prefetchDepth = 4; // Entries opened ahead of the one being written
+        
+        @JsonProperty("prefetchThreads")
+        private int prefetchThreads = 16;
+        
+        @JsonProperty("maxPrefetchBytes")
+        private long maxPrefetchBytes = 8 * 1024 * 1024; // Larger S3 objects are opened ahead, not read ahead
+        
+        @JsonProperty("storedMimeTypes")
+        private List<String> storedMimeTypes = List.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp",
+            "application/zip", "application/gzip", "video/*", "audio/*"
+        );
+
+        public int getMaxFiles() { return maxFiles; }
+        public void setMaxFiles(int maxFiles) { this.maxFiles = maxFiles; }
+        
+        public int getPrefetchDepth() { return prefetchDepth; }
+        public void setPrefetchDepth(int prefetchDepth) { this.prefetchDepth = prefetchDepth; }
+        
+        public int getPrefetchThreads() { return prefetchThreads; }
+        public void setPrefetchThreads(int prefetchThreads) { this.prefetchThreads = prefetchThreads; }
+        
+        public long getMaxPrefetchBytes() { return maxPrefetchBytes; }
+        public void setMaxPrefetchBytes(long maxPrefetchBytes) { this.maxPrefetchBytes = maxPrefetchBytes; }
+        
+        public List<String> getStoredMimeTypes() { return storedMimeTypes; }
+        public void setStoredMimeTypes(List<String> storedMimeTypes) { this.storedMimeTypes = storedMimeTypes; }
+    }
+
+    public static class HttpCacheConfig {
+        @JsonProperty("publicCacheControl")
+        private String publicCacheControl = "public, max-age=86400";
+        
+        @JsonProperty("privateCacheControl")
+        private String privateCacheControl = "private, no-cache"; // Stored, but revalidated on every use
+
+        public String getPublicCacheControl() { return publicCacheControl; }
+        public void setPublicCacheControl(String publicCacheControl) { this.publicCacheControl = publicCacheControl; }
+        
+        public String getPrivateCacheControl() { return privateCacheControl; }
+        public void setPrivateCacheControl(String privateCacheControl) { this.privateCacheControl = privateCacheControl; }
+    }
+
+    public static class PlacementConfig {
+        @JsonProperty("defaultBackend")
+        private String defaultBackend = null; // S3 when enabled, local otherwise
+        
+        @JsonProperty("smallObjectBackend")
+        private String smallObjectBackend = "local";
+        
+        @JsonProperty("smallObjectThreshold")
+        private int smallObjectThreshold = 0; // Bytes, 0 sends everything to the default backend
+        
+        @JsonProperty("mimeTypeBackends")
+        private Map<String, String> mimeTypeBackends = new LinkedHashMap<>();
+
+        public String getDefaultBackend() { return defaultBackend; }
+        public void setDefaultBackend(String defaultBackend) { this.defaultBackend = defaultBackend; }
+        
+        public String getSmallObjectBackend() { return smallObjectBackend; }
+        public void setSmallObjectBackend(String smallObjectBackend) { this.smallObjectBackend = smallObjectBackend; }
+        
+        public int getSmallObjectThreshold() { return smallObjectThreshold; }
+        public void setSmallObjectThreshold(int smallObjectThreshold) { this.smallObjectThreshold = smallObjectThreshold; }
+        
+        public Map<String, String> getMimeTypeBackends() { return mimeTypeBackends; }
+        public void setMimeTypeBackends(Map<String, String> mimeTypeBackends) { this.mimeTypeBackends = mimeTypeBackends; }
+    }
+
+    public static class SegmentStoreConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+        
+        @JsonProperty("basePath")
+        private String basePath = "/tmp/file-storage/segments";
+        
+        @JsonProperty("segmentSize")
+        private long segmentSize = 256 * 1024 * 1024; // 256MB
+        
+        @JsonProperty("maxEntrySize")
+        private int maxEntrySize = 1024 * 1024; // 1MB
+        
+        @JsonProperty("compactionInterval")
+        private Duration compactionInterval = Duration.minutes(10);
+        
+        @JsonProperty("compactionThreshold")
+        private double compactionThreshold = 0.5; // Rewrite sealed segments with less live data than this
+        
+        @JsonProperty("compactionGracePeriod")
+        private Duration compactionGracePeriod = Duration.seconds(30);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getBasePath() { return basePath; }
+        public void setBasePath(String basePath) { this.basePath = basePath; }
+        
+        public long getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(long segmentSize) { this.segmentSize = segmentSize; }
+        
+        public int getMaxEntrySize() { return maxEntrySize; }
+        public void setMaxEntrySize(int maxEntrySize) { this.maxEntrySize = maxEntrySize; }
+        
+        public Duration getCompactionInterval() { return compactionInterval; }
+        public void setCompactionInterval(Duration compactionInterval) { this.compactionInterval = compactionInterval; }
+        
+        public double getCompactionThreshold() { return compactionThreshold; }
+        public void setCompactionThreshold(double compactionThreshold) { this.compactionThreshold = compactionThreshold; }
+        
+        public Duration getCompactionGracePeriod() { return compactionGracePeriod; }
+        public void setCompactionGracePeriod(Duration compactionGracePeriod) { this.compactionGracePeriod = compactionGracePeriod; }
+    }
+
+    public static class PresignConfig {
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+        
+        @JsonProperty("uploadTtl")
+        private Duration uploadTtl = Duration.minutes(15);
+        
+        @JsonProperty("downloadTtl")
+        private Duration downloadTtl = Duration.minutes(5);
+        
+        @JsonProperty("redirectDownloads")
+        private boolean redirectDownloads = false; // GET /files/{id} answers 307 to S3 instead of streaming
+        
+        @JsonProperty("reapInterval")
+        private Duration reapInterval = Duration.minutes(15); // How often staged uploads older than 2x uploadTtl are deleted
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public Duration getUploadTtl() { return uploadTtl; }
+        public void setUploadTtl(Duration uploadTtl) { this.uploadTtl = uploadTtl; }
+        
+        public Duration getDownloadTtl() { return downloadTtl; }
+        public void setDownloadTtl(Duration downloadTtl) { this.downloadTtl = downloadTtl; }
+        
+        public boolean isRedirectDownloads() { return redirectDownloads; }
+        public void setRedirectDownloads(boolean redirectDownloads) { this.redirectDownloads = redirectDownloads; }
+        
+        public Duration getReapInterval() { return reapInterval; }
+        public void setReapInterval(Duration reapInterval) { this.reapInterval = reapInterval; }
+    }
+
+    public static class ResumableUploadConfig {
+        @JsonProperty("backend")
+        private String backend = null; // The default backend; must be s3 or local
+        
+        @JsonProperty("chunkSize")
+        private int chunkSize = 8 * 1024 * 1024; // 8MB, never below S3's 5MB part minimum
+        
+        @JsonProperty("sessionTtl")
+        private Duration sessionTtl = Duration.hours(24);
+        
+        @JsonProperty("expiryInterval")
+        private Duration expiryInterval = Duration.minutes(15);
+
+        public String getBackend() { return backend; }
+        public void setBackend(String backend) { this.backend = backend; }
+        
+        public int getChunkSize() { return chunkSize; }
+        public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+        
+        public Duration getSessionTtl() { return sessionTtl; }
+        public void setSessionTtl(Duration sessionTtl) { this.sessionTtl = sessionTtl; }
+        
+        public Duration getExpiryInterval() { return expiryInterval; }
+        public void setExpiryInterval(Duration expiryInterval) { this.expiryInterval = expiryInterval; }
     }
 }
\ No newline at end of file
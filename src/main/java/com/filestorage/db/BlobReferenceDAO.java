@@ -0,0 +1,58 @@
+package com.filestorage.db;
+
+import com.filestorage.model.BlobReference;
+import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
+
+import java.util.Optional;
+
+@RegisterBeanMapper(BlobReference.class)
+public interface BlobReferenceDAO {
+
+    // One statement either creates the blob with its first reference or counts another one, so
+    // nodes storing the same content at once cannot both create it. Returns 1 for an insert, 2 for an update.
+    @SqlUpdate("INSERT INTO blob_reference (checksum, storage_location, file_size, mime_type, content_encoding, " +
+               "ref_count, created_date) " +
+               "VALUES (:checksum, :storageLocation, :fileSize, :mimeType, :contentEncoding, 1, :createdDate) " +
+               "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1")
+    int insertOrIncrement(@BindBean BlobReference blobReference);
+
+    @SqlQuery("SELECT * FROM blob_reference WHERE checksum = :checksum")
+    Optional<BlobReference> findByChecksum(@Bind("checksum") String checksum);
+
+    @SqlQuery("SELECT * FROM blob_reference WHERE checksum = :checksum FOR UPDATE")
+    Optional<BlobReference> lockByChecksum(@Bind("checksum") String checksum);
+
+    @SqlUpdate("UPDATE blob_reference SET storage_location = :newLocation " +
+               "WHERE checksum = :checksum AND storage_location = :oldLocation")
+    int updateStorageLocation(@Bind("checksum") String checksum,
+                              @Bind("oldLocation") String oldLocation,
+                              @Bind("newLocation") String newLocation);
+
+    @SqlUpdate("UPDATE blob_reference SET ref_count = ref_count + 1 WHERE checksum = :checksum")
+    int incrementRefCount(@Bind("checksum") String checksum);
+
+    @SqlUpdate("UPDATE blob_reference SET ref_count = ref_count - 1 WHERE checksum = :checksum AND ref_count > 0")
+    int decrementRefCount(@Bind("checksum") String checksum);
+
+    @SqlUpdate("DELETE FROM blob_reference WHERE checksum = :checksum AND ref_count <= 0")
+    int deleteIfUnreferenced(@Bind("checksum") String checksum);
+
+    /**
+     * Drops one reference. Returns the blob only if that was the last one and this call
+     * removed its row, in which case the caller deletes the stored object.
+     */
+    @Transaction
+    default Optional<BlobReference> releaseReference(String checksum) {
+        Optional<BlobReference> blob = lockByChecksum(checksum);
+        if (blob.isEmpty()) {
+            return Optional.empty();
+        }
+        decrementRefCount(checksum);
+        return deleteIfUnreferenced(checksum) > 0 ? blob : Optional.empty();
+    }
+}
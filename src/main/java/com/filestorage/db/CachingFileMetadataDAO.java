@@ -0,0 +1,371 @@
+package com.filestorage.db;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.SearchHit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache in front of {@link FileMetadataDAO#findById}. Writes through this DAO
+ * invalidate the affected id; writes made by other nodes become visible after the TTL.
+ * A load that overlaps an invalidation of its id is dropped, so it cannot cache the row as
+ * it was before the write.
+ */
+public class CachingFileMetadataDAO implements FileMetadataDAO {
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final FileMetadataDAO delegate;
+    private final Cache<String, Optional<FileMetadata>> cache;
+    private final Cache<String, Boolean> missingIds;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public CachingFileMetadataDAO(FileMetadataDAO delegate, FileStorageConfiguration.MetadataCacheConfig cacheConfig) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(cacheConfig.getMaximumSize())
+            .expireAfterWrite(cacheConfig.getTtl().toMilliseconds(), TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
+        this.missingIds = CacheBuilder.newBuilder()
+            .maximumSize(cacheConfig.getMaximumSize())
+            .expireAfterWrite(cacheConfig.getNegativeTtl().toMilliseconds(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        String prefix = MetricRegistry.name(FileMetadataDAO.class, "cache");
+        metrics.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) cache::size);
+        metrics.register(MetricRegistry.name(prefix, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        metrics.register(MetricRegistry.name(prefix, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        metrics.register(MetricRegistry.name(prefix, "hit-rate"), (Gauge<Double>) () -> cache.stats().hitRate());
+        metrics.register(MetricRegistry.name(prefix, "evictions"), (Gauge<Long>) () -> cache.stats().evictionCount());
+        metrics.register(MetricRegistry.name(prefix, "negative-size"), (Gauge<Long>) missingIds::size);
+    }
+
+    public void invalidate(String id) {
+        generations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+        missingIds.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+        missingIds.invalidateAll();
+    }
+
+    private static int stripe(String id) {
+        return Math.floorMod(id.hashCode(), GENERATION_STRIPES);
+    }
+
+    @Override
+    public Optional<FileMetadata> findById(String id) {
+        if (missingIds.getIfPresent(id) != null) {
+            return Optional.empty();
+        }
+
+        long generation = generations.get(stripe(id));
+        Optional<FileMetadata> metadata;
+        try {
+            metadata = cache.get(id, () -> delegate.findById(id));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Metadata lookup failed for " + id, e.getCause());
+        }
+
+        // A write invalidated the id while we loaded it, so the loaded row may predate the write
+        if (generations.get(stripe(id)) != generation) {
+            cache.invalidate(id);
+            return metadata;
+        }
+        if (metadata.isEmpty()) {
+            cache.invalidate(id);
+            missingIds.put(id, Boolean.TRUE);
+        }
+        return metadata;
+    }
+
+    @Override
+    public void insertFileMetadata(FileMetadata fileMetadata) {
+        try {
+            delegate.insertFileMetadata(fileMetadata);
+        } finally {
+            invalidate(fileMetadata.getId());
+        }
+    }
+
+    @Override
+    public void insertFileMetadataBatch(List<FileMetadata> files) {
+        try {
+            delegate.insertFileMetadataBatch(files);
+        } finally {
+            for (FileMetadata fileMetadata : files) {
+                invalidate(fileMetadata.getId());
+            }
+        }
+    }
+
+    @Override
+    public void update(FileMetadata fileMetadata) {
+        try {
+            delegate.update(fileMetadata);
+        } finally {
+            invalidate(fileMetadata.getId());
+        }
+    }
+
+    @Override
+    public void updateMetadata(String id, String description, String tags, boolean isPublic) {
+        try {
+            delegate.updateMetadata(id, description, tags, isPublic);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void updateExpirationDate(String id, Date expirationDate) {
+        try {
+            delegate.updateExpirationDate(id, expirationDate);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public int updateStorageLocation(String storedName, String oldLocation, String newLocation) {
+        List<String> ids = delegate.findIdsByStoredName(storedName);
+        try {
+            return delegate.updateStorageLocation(storedName, oldLocation, newLocation);
+        } finally {
+            ids.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public int deleteById(String id) {
+        try {
+            return delegate.deleteById(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public List<SearchHit> searchKeyset(String query, String caller, boolean includeOwn, boolean includePublic,
+                                        String mimeType, double cursorRelevance, String cursorId, int limit) {
+        return delegate.searchKeyset(query, caller, includeOwn, includePublic, mimeType, cursorRelevance, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByIds(List<String> ids) {
+        return delegate.findByIds(ids);
+    }
+
+    @Override
+    public List<FileMetadata> findByUploadedByAndTags(String uploadedBy, String pattern, int limit) {
+        return delegate.findByUploadedByAndTags(uploadedBy, pattern, limit);
+    }
+
+    @Override
+    public int deleteByIds(List<String> ids) {
+        try {
+            return delegate.deleteByIds(ids);
+        } finally {
+            ids.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public List<String> lockIds(List<String> ids) {
+        return delegate.lockIds(ids);
+    }
+
+    @Override
+    public List<String> claimAndDeleteByIds(List<String> ids) {
+        try {
+            return delegate.claimAndDeleteByIds(ids);
+        } finally {
+            ids.forEach(this::invalidate);
+        }
+    }
+
+    @Override
+    public int deleteExpiredFiles(Date currentDate) {
+        try {
+            return delegate.deleteExpiredFiles(currentDate);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void updateLastAccessed(String id, Date lastAccessed) {
+        delegate.updateLastAccessed(id, lastAccessed);
+    }
+
+    @Override
+    public void updateLastAccessedBatch(List<String> ids, List<Date> lastAccessed) {
+        delegate.updateLastAccessedBatch(ids, lastAccessed);
+    }
+
+    @Override
+    public List<FileMetadata> findByUploadedBy(String uploadedBy, int limit, int offset) {
+        return delegate.findByUploadedBy(uploadedBy, limit, offset);
+    }
+
+    @Override
+    public List<FileMetadata> findByMimeType(String mimeType, int limit, int offset) {
+        return delegate.findByMimeType(mimeType, limit, offset);
+    }
+
+    @Override
+    public List<FileMetadata> searchByOriginalName(String pattern, int limit, int offset) {
+        return delegate.searchByOriginalName(pattern, limit, offset);
+    }
+
+    @Override
+    public List<FileMetadata> searchByTags(String pattern, int limit, int offset) {
+        return delegate.searchByTags(pattern, limit, offset);
+    }
+
+    @Override
+    public List<FileMetadata> findPublicFiles(int limit, int offset) {
+        return delegate.findPublicFiles(limit, offset);
+    }
+
+    @Override
+    public List<FileMetadata> findByUploadedByKeyset(String uploadedBy, Date cursorDate, String cursorId, int limit) {
+        return delegate.findByUploadedByKeyset(uploadedBy, cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByMimeTypeKeyset(String mimeType, Date cursorDate, String cursorId, int limit) {
+        return delegate.findByMimeTypeKeyset(mimeType, cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> searchByOriginalNameKeyset(String pattern, Date cursorDate, String cursorId, int limit) {
+        return delegate.searchByOriginalNameKeyset(pattern, cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> searchByTagsKeyset(String pattern, Date cursorDate, String cursorId, int limit) {
+        return delegate.searchByTagsKeyset(pattern, cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findPublicFilesKeyset(Date cursorDate, String cursorId, int limit) {
+        return delegate.findPublicFilesKeyset(cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByFileSizeKeyset(long minSize, long maxSize, Date cursorDate, String cursorId, int limit) {
+        return delegate.findByFileSizeKeyset(minSize, maxSize, cursorDate, cursorId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByUploadedByFirst(String uploadedBy, int limit) {
+        return delegate.findByUploadedByFirst(uploadedBy, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByMimeTypeFirst(String mimeType, int limit) {
+        return delegate.findByMimeTypeFirst(mimeType, limit);
+    }
+
+    @Override
+    public List<FileMetadata> searchByOriginalNameFirst(String pattern, int limit) {
+        return delegate.searchByOriginalNameFirst(pattern, limit);
+    }
+
+    @Override
+    public List<FileMetadata> searchByTagsFirst(String pattern, int limit) {
+        return delegate.searchByTagsFirst(pattern, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findPublicFilesFirst(int limit) {
+        return delegate.findPublicFilesFirst(limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByFileSizeFirst(long minSize, long maxSize, int limit) {
+        return delegate.findByFileSizeFirst(minSize, maxSize, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findExpiredFiles(Date currentDate) {
+        return delegate.findExpiredFiles(currentDate);
+    }
+
+    @Override
+    public List<FileMetadata> findExpiredFilesAfter(Date currentDate, Date afterDate, String afterId, int limit) {
+        return delegate.findExpiredFilesAfter(currentDate, afterDate, afterId, limit);
+    }
+
+    @Override
+    public List<FileMetadata> findByFileSize(long minSize, long maxSize, int limit, int offset) {
+        return delegate.findByFileSize(minSize, maxSize, limit, offset);
+    }
+
+    @Override
+    public List<String> findIdsByStoredName(String storedName) {
+        return delegate.findIdsByStoredName(storedName);
+    }
+
+    @Override
+    public long countByStoredNameElsewhere(String storedName, String location) {
+        return delegate.countByStoredNameElsewhere(storedName, location);
+    }
+
+    @Override
+    public long countByChecksumAndUploadedBy(String checksum, String uploadedBy) {
+        return delegate.countByChecksumAndUploadedBy(checksum, uploadedBy);
+    }
+
+    @Override
+    public long countByUploadedBy(String uploadedBy) {
+        return delegate.countByUploadedBy(uploadedBy);
+    }
+
+    @Override
+    public long getTotalSizeByUploadedBy(String uploadedBy) {
+        return delegate.getTotalSizeByUploadedBy(uploadedBy);
+    }
+
+    @Override
+    public long countByMimeType(String mimeType) {
+        return delegate.countByMimeType(mimeType);
+    }
+
+    @Override
+    public long countPublicFiles() {
+        return delegate.countPublicFiles();
+    }
+
+    @Override
+    public long countAllFiles() {
+        return delegate.countAllFiles();
+    }
+
+    @Override
+    public long getTotalStorageUsed() {
+        return delegate.getTotalStorageUsed();
+    }
+}
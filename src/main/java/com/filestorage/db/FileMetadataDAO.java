@@ -1,11 +1,18 @@
 package com.filestorage.db;
 
 import com.filestorage.model.FileMetadata;
+import com.filestorage.model.PageCursor;
+import com.filestorage.model.SearchCursor;
+import com.filestorage.model.SearchHit;
 import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
+import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.jdbi.v3.sqlobject.transaction.Transaction;
 
 import java.util.Date;
 import java.util.List;
@@ -14,18 +21,25 @@ import java.util.Optional;
 @RegisterBeanMapper(FileMetadata.class)
 public interface FileMetadataDAO {
     
-    @SqlUpdate("INSERT INTO file_metadata (id, original_name, stored_name, mime_type, file_size, " +
+    String INSERT_FILE_METADATA = "INSERT INTO file_metadata (id, original_name, stored_name, mime_type, file_size, " +
                "checksum, storage_location, bucket_name, uploaded_by, upload_date, last_accessed, " +
                "description, tags, is_public, content_encoding, content_language, expiration_date, version) " +
                "VALUES (:id, :originalName, :storedName, :mimeType, :fileSize, :checksum, " +
                ":storageLocation, :bucketName, :uploadedBy, :uploadDate, :lastAccessed, " +
-               ":description, :tags, :isPublic, :contentEncoding, :contentLanguage, :expirationDate, :version)")
+               ":description, :tags, :isPublic, :contentEncoding, :contentLanguage, :expirationDate, :version)";
+    
+    @SqlUpdate(INSERT_FILE_METADATA)
     void insertFileMetadata(@BindBean FileMetadata fileMetadata);
     
     default void insert(FileMetadata fileMetadata) {
         insertFileMetadata(fileMetadata);
     }
     
+    // All rows or none, so a failed batch can be retried row by row
+    @SqlBatch(INSERT_FILE_METADATA)
+    @Transaction
+    void insertFileMetadataBatch(@BindBean List<FileMetadata> files);
+    
     @SqlUpdate("UPDATE file_metadata SET original_name = :originalName, mime_type = :mimeType, " +
                "description = :description, tags = :tags, is_public = :isPublic WHERE id = :id")
     void update(@BindBean FileMetadata fileMetadata);
@@ -33,7 +47,7 @@ public interface FileMetadataDAO {
     @SqlQuery("SELECT * FROM file_metadata WHERE id = :id")
     Optional<FileMetadata> findById(@Bind("id") String id);
     
-    @SqlQuery("SELECT * FROM file_metadata WHERE uploaded_by = :uploadedBy ORDER BY upload_date DESC " +
+    @SqlQuery("SELECT * FROM file_metadata WHERE uploaded_by = :uploadedBy ORDER BY upload_date DESC, id DESC " +
               "LIMIT :limit OFFSET :offset")
     List<FileMetadata> findByUploadedBy(@Bind("uploadedBy") String uploadedBy, 
                                        @Bind("limit") int limit, 
@@ -44,34 +58,162 @@ public interface FileMetadataDAO {
         return findByUploadedBy(uploadedBy, limit, offset);
     }
     
-    @SqlQuery("SELECT * FROM file_metadata WHERE mime_type = :mimeType ORDER BY upload_date DESC " +
+    @SqlQuery("SELECT * FROM file_metadata WHERE mime_type = :mimeType ORDER BY upload_date DESC, id DESC " +
               "LIMIT :limit OFFSET :offset")
     List<FileMetadata> findByMimeType(@Bind("mimeType") String mimeType, 
                                      @Bind("limit") int limit, 
                                      @Bind("offset") int offset);
     
-    @SqlQuery("SELECT * FROM file_metadata WHERE original_name LIKE :pattern ORDER BY upload_date DESC " +
+    @SqlQuery("SELECT * FROM file_metadata WHERE original_name LIKE :pattern ORDER BY upload_date DESC, id DESC " +
               "LIMIT :limit OFFSET :offset")
     List<FileMetadata> searchByOriginalName(@Bind("pattern") String pattern, 
                                            @Bind("limit") int limit, 
                                            @Bind("offset") int offset);
     
-    @SqlQuery("SELECT * FROM file_metadata WHERE tags LIKE :pattern ORDER BY upload_date DESC " +
+    @SqlQuery("SELECT * FROM file_metadata WHERE tags LIKE :pattern ORDER BY upload_date DESC, id DESC " +
               "LIMIT :limit OFFSET :offset")
     List<FileMetadata> searchByTags(@Bind("pattern") String pattern, 
                                    @Bind("limit") int limit, 
                                    @Bind("offset") int offset);
     
-    @SqlQuery("SELECT * FROM file_metadata WHERE is_public = true ORDER BY upload_date DESC " +
+    @SqlQuery("SELECT * FROM file_metadata WHERE is_public = true ORDER BY upload_date DESC, id DESC " +
               "LIMIT :limit OFFSET :offset")
     List<FileMetadata> findPublicFiles(@Bind("limit") int limit, 
                                       @Bind("offset") int offset);
     
+    @SqlQuery("SELECT * FROM file_metadata WHERE uploaded_by = :uploadedBy " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByUploadedByKeyset(@Bind("uploadedBy") String uploadedBy,
+                                              @Bind("cursorDate") Date cursorDate,
+                                              @Bind("cursorId") String cursorId,
+                                              @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE uploaded_by = :uploadedBy " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByUploadedByFirst(@Bind("uploadedBy") String uploadedBy,
+                                             @Bind("limit") int limit);
+    
+    default List<FileMetadata> findByUploadedByPage(String uploadedBy, PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return findByUploadedByFirst(uploadedBy, limit);
+        }
+        return findByUploadedByKeyset(uploadedBy, cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE mime_type = :mimeType " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByMimeTypeKeyset(@Bind("mimeType") String mimeType,
+                                            @Bind("cursorDate") Date cursorDate,
+                                            @Bind("cursorId") String cursorId,
+                                            @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE mime_type = :mimeType " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByMimeTypeFirst(@Bind("mimeType") String mimeType,
+                                           @Bind("limit") int limit);
+    
+    default List<FileMetadata> findByMimeTypePage(String mimeType, PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return findByMimeTypeFirst(mimeType, limit);
+        }
+        return findByMimeTypeKeyset(mimeType, cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE original_name LIKE :pattern " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> searchByOriginalNameKeyset(@Bind("pattern") String pattern,
+                                                  @Bind("cursorDate") Date cursorDate,
+                                                  @Bind("cursorId") String cursorId,
+                                                  @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE original_name LIKE :pattern " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> searchByOriginalNameFirst(@Bind("pattern") String pattern,
+                                                 @Bind("limit") int limit);
+    
+    default List<FileMetadata> searchByOriginalNamePage(String pattern, PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return searchByOriginalNameFirst(pattern, limit);
+        }
+        return searchByOriginalNameKeyset(pattern, cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE tags LIKE :pattern " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> searchByTagsKeyset(@Bind("pattern") String pattern,
+                                          @Bind("cursorDate") Date cursorDate,
+                                          @Bind("cursorId") String cursorId,
+                                          @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE tags LIKE :pattern " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> searchByTagsFirst(@Bind("pattern") String pattern,
+                                         @Bind("limit") int limit);
+    
+    default List<FileMetadata> searchByTagsPage(String pattern, PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return searchByTagsFirst(pattern, limit);
+        }
+        return searchByTagsKeyset(pattern, cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE is_public = true " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findPublicFilesKeyset(@Bind("cursorDate") Date cursorDate,
+                                             @Bind("cursorId") String cursorId,
+                                             @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE is_public = true " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findPublicFilesFirst(@Bind("limit") int limit);
+    
+    default List<FileMetadata> findPublicFilesPage(PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return findPublicFilesFirst(limit);
+        }
+        return findPublicFilesKeyset(cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE file_size > :minSize AND file_size < :maxSize " +
+              "AND (upload_date < :cursorDate OR (upload_date = :cursorDate AND id < :cursorId)) " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByFileSizeKeyset(@Bind("minSize") long minSize,
+                                            @Bind("maxSize") long maxSize,
+                                            @Bind("cursorDate") Date cursorDate,
+                                            @Bind("cursorId") String cursorId,
+                                            @Bind("limit") int limit);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE file_size > :minSize AND file_size < :maxSize " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByFileSizeFirst(@Bind("minSize") long minSize,
+                                           @Bind("maxSize") long maxSize,
+                                           @Bind("limit") int limit);
+    
+    default List<FileMetadata> findByFileSizePage(long minSize, long maxSize, PageCursor cursor, int limit) {
+        if (cursor.isFirst()) {
+            return findByFileSizeFirst(minSize, maxSize, limit);
+        }
+        return findByFileSizeKeyset(minSize, maxSize, cursor.getUploadDate(), cursor.getId(), limit);
+    }
+    
     @SqlQuery("SELECT * FROM file_metadata WHERE expiration_date < :currentDate")
     List<FileMetadata> findExpiredFiles(@Bind("currentDate") Date currentDate);
     
+    @SqlQuery("SELECT * FROM file_metadata WHERE expiration_date < :currentDate " +
+              "AND (expiration_date > :afterDate OR (expiration_date = :afterDate AND id > :afterId)) " +
+              "ORDER BY expiration_date, id LIMIT :limit")
+    List<FileMetadata> findExpiredFilesAfter(@Bind("currentDate") Date currentDate,
+                                             @Bind("afterDate") Date afterDate,
+                                             @Bind("afterId") String afterId,
+                                             @Bind("limit") int limit);
+    
     @SqlQuery("SELECT * FROM file_metadata WHERE file_size > :minSize AND file_size < :maxSize " +
-              "ORDER BY upload_date DESC LIMIT :limit OFFSET :offset")
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit OFFSET :offset")
     List<FileMetadata> findByFileSize(@Bind("minSize") long minSize, 
                                      @Bind("maxSize") long maxSize,
                                      @Bind("limit") int limit, 
@@ -80,6 +222,9 @@ public interface FileMetadataDAO {
     @SqlUpdate("UPDATE file_metadata SET last_accessed = :lastAccessed WHERE id = :id")
     void updateLastAccessed(@Bind("id") String id, @Bind("lastAccessed") Date lastAccessed);
     
+    @SqlBatch("UPDATE file_metadata SET last_accessed = :lastAccessed WHERE id = :id AND last_accessed < :lastAccessed")
+    void updateLastAccessedBatch(@Bind("id") List<String> ids, @Bind("lastAccessed") List<Date> lastAccessed);
+    
     @SqlUpdate("UPDATE file_metadata SET description = :description, tags = :tags, " +
                "is_public = :isPublic WHERE id = :id")
     void updateMetadata(@Bind("id") String id, 
@@ -87,15 +232,82 @@ public interface FileMetadataDAO {
                        @Bind("tags") String tags,
                        @Bind("isPublic") boolean isPublic);
     
+    @SqlQuery("SELECT id FROM file_metadata WHERE stored_name = :storedName")
+    List<String> findIdsByStoredName(@Bind("storedName") String storedName);
+    
+    @SqlUpdate("UPDATE file_metadata SET storage_location = :newLocation " +
+               "WHERE stored_name = :storedName AND storage_location = :oldLocation")
+    int updateStorageLocation(@Bind("storedName") String storedName,
+                              @Bind("oldLocation") String oldLocation,
+                              @Bind("newLocation") String newLocation);
+    
+    @SqlQuery("SELECT COUNT(*) FROM file_metadata WHERE stored_name = :storedName AND storage_location <> :location")
+    long countByStoredNameElsewhere(@Bind("storedName") String storedName, @Bind("location") String location);
+    
     @SqlUpdate("UPDATE file_metadata SET expiration_date = :expirationDate WHERE id = :id")
     void updateExpirationDate(@Bind("id") String id, @Bind("expirationDate") Date expirationDate);
     
     @SqlUpdate("DELETE FROM file_metadata WHERE id = :id")
-    void deleteById(@Bind("id") String id);
+    int deleteById(@Bind("id") String id);
+    
+    // The derived table lets the keyset condition refer to the computed relevance
+    @SqlQuery("SELECT * FROM (" +
+              "SELECT f.*, MATCH(original_name, tags, description) AGAINST (:query IN NATURAL LANGUAGE MODE) AS relevance " +
+              "FROM file_metadata f " +
+              "WHERE MATCH(original_name, tags, description) AGAINST (:query IN NATURAL LANGUAGE MODE) " +
+              "AND ((:includeOwn AND uploaded_by = :caller) OR (:includePublic AND is_public = true)) " +
+              "AND (:mimeType IS NULL OR mime_type = :mimeType)" +
+              ") ranked " +
+              "WHERE relevance < :cursorRelevance OR (relevance = :cursorRelevance AND id < :cursorId) " +
+              "ORDER BY relevance DESC, id DESC LIMIT :limit")
+    @RegisterRowMapper(SearchHitMapper.class)
+    List<SearchHit> searchKeyset(@Bind("query") String query,
+                                 @Bind("caller") String caller,
+                                 @Bind("includeOwn") boolean includeOwn,
+                                 @Bind("includePublic") boolean includePublic,
+                                 @Bind("mimeType") String mimeType,
+                                 @Bind("cursorRelevance") double cursorRelevance,
+                                 @Bind("cursorId") String cursorId,
+                                 @Bind("limit") int limit);
+    
+    default List<SearchHit> searchPage(String query, String caller, boolean includeOwn, boolean includePublic,
+                                       String mimeType, SearchCursor cursor, int limit) {
+        return searchKeyset(query, caller, includeOwn, includePublic, mimeType,
+            cursor.getRelevance(), cursor.getId(), limit);
+    }
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE id IN (<ids>)")
+    List<FileMetadata> findByIds(@BindList("ids") List<String> ids);
+    
+    @SqlQuery("SELECT * FROM file_metadata WHERE uploaded_by = :uploadedBy AND tags LIKE :pattern " +
+              "ORDER BY upload_date DESC, id DESC LIMIT :limit")
+    List<FileMetadata> findByUploadedByAndTags(@Bind("uploadedBy") String uploadedBy,
+                                               @Bind("pattern") String pattern,
+                                               @Bind("limit") int limit);
+    
+    @SqlUpdate("DELETE FROM file_metadata WHERE id IN (<ids>)")
+    int deleteByIds(@BindList("ids") List<String> ids);
+    
+    @SqlQuery("SELECT id FROM file_metadata WHERE id IN (<ids>) FOR UPDATE")
+    List<String> lockIds(@BindList("ids") List<String> ids);
+    
+    // Concurrent claims of the same rows wait on the lock and then find them gone, so each id
+    // is returned to exactly one caller
+    @Transaction
+    default List<String> claimAndDeleteByIds(List<String> ids) {
+        List<String> claimed = lockIds(ids);
+        if (!claimed.isEmpty()) {
+            deleteByIds(claimed);
+        }
+        return claimed;
+    }
     
     @SqlUpdate("DELETE FROM file_metadata WHERE expiration_date < :currentDate")
     int deleteExpiredFiles(@Bind("currentDate") Date currentDate);
     
+    @SqlQuery("SELECT COUNT(*) FROM file_metadata WHERE checksum = :checksum AND uploaded_by = :uploadedBy")
+    long countByChecksumAndUploadedBy(@Bind("checksum") String checksum, @Bind("uploadedBy") String uploadedBy);
+    
     @SqlQuery("SELECT COUNT(*) FROM file_metadata WHERE uploaded_by = :uploadedBy")
     long countByUploadedBy(@Bind("uploadedBy") String uploadedBy);
     
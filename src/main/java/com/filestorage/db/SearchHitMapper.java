@@ -0,0 +1,26 @@
+package com.filestorage.db;
+
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.SearchHit;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.mapper.reflect.BeanMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class SearchHitMapper implements RowMapper<SearchHit> {
+    private final RowMapper<FileMetadata> fileMapper = BeanMapper.of(FileMetadata.class);
+
+    @Override
+    public SearchHit map(ResultSet rs, StatementContext ctx) throws SQLException {
+        return new SearchHit(fileMapper.map(rs, ctx), rs.getDouble("relevance"));
+    }
+
+    @Override
+    public RowMapper<SearchHit> specialize(ResultSet rs, StatementContext ctx) throws SQLException {
+        // Resolve the bean columns once per result set rather than once per row
+        RowMapper<FileMetadata> specialized = fileMapper.specialize(rs, ctx);
+        return (row, context) -> new SearchHit(specialized.map(row, context), row.getDouble("relevance"));
+    }
+}
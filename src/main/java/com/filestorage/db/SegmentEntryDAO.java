@@ -0,0 +1,48 @@
+package com.filestorage.db;
+
+import com.filestorage.model.SegmentEntry;
+import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.List;
+import java.util.Optional;
+
+@RegisterBeanMapper(SegmentEntry.class)
+public interface SegmentEntryDAO {
+
+    @SqlUpdate("INSERT INTO segment () VALUES ()")
+    @GetGeneratedKeys
+    long allocateSegmentId();
+
+    @SqlUpdate("INSERT INTO segment_entry (id, segment_id, entry_offset, entry_length, created_date) " +
+               "VALUES (:id, :segmentId, :entryOffset, :entryLength, :createdDate)")
+    void insert(@BindBean SegmentEntry entry);
+
+    @SqlQuery("SELECT * FROM segment_entry WHERE id = :id")
+    Optional<SegmentEntry> findById(@Bind("id") String id);
+
+    @SqlQuery("SELECT * FROM segment_entry WHERE segment_id = :segmentId ORDER BY entry_offset")
+    List<SegmentEntry> findBySegment(@Bind("segmentId") long segmentId);
+
+    @SqlQuery("SELECT COALESCE(SUM(entry_length), 0) FROM segment_entry WHERE segment_id = :segmentId")
+    long sumLiveBytes(@Bind("segmentId") long segmentId);
+
+    // Only moves entries still in the old segment, so a concurrent delete is never undone
+    @SqlUpdate("UPDATE segment_entry SET segment_id = :newSegmentId, entry_offset = :newOffset " +
+               "WHERE id = :id AND segment_id = :oldSegmentId")
+    int move(@Bind("id") String id,
+             @Bind("oldSegmentId") long oldSegmentId,
+             @Bind("newSegmentId") long newSegmentId,
+             @Bind("newOffset") long newOffset);
+
+    @SqlUpdate("DELETE FROM segment_entry WHERE id = :id")
+    int deleteById(@Bind("id") String id);
+
+    @SqlUpdate("DELETE FROM segment_entry WHERE id IN (<ids>)")
+    int deleteByIds(@BindList("ids") List<String> ids);
+}
@@ -0,0 +1,42 @@
+package com.filestorage.db;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wraps a JDBI SQL object so every DAO method call is timed under
+ * {@code <dao interface>.<method>}, which separates database time from storage time.
+ */
+public final class TimedDAO {
+
+    private TimedDAO() {
+    }
+
+    public static <T> T wrap(Class<T> daoType, T delegate, MetricRegistry metrics) {
+        Map<Method, Timer> timers = new HashMap<>();
+        for (Method method : daoType.getMethods()) {
+            timers.put(method, metrics.timer(MetricRegistry.name(daoType, method.getName())));
+        }
+
+        Object proxy = Proxy.newProxyInstance(daoType.getClassLoader(), new Class<?>[] {daoType}, (self, method, args) -> {
+            Timer timer = timers.get(method);
+            Timer.Context context = timer != null ? timer.time() : null;
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (context != null) {
+                    context.stop();
+                }
+            }
+        });
+        return daoType.cast(proxy);
+    }
+}
@@ -0,0 +1,47 @@
+package com.filestorage.db;
+
+import com.filestorage.model.UploadChunk;
+import com.filestorage.model.UploadSession;
+import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@RegisterBeanMapper(UploadSession.class)
+@RegisterBeanMapper(UploadChunk.class)
+public interface UploadSessionDAO {
+
+    @SqlUpdate("INSERT INTO upload_session (id, uploaded_by, file_name, upload_length, chunk_size, backend, " +
+               "upload_handle, status, created_date, expires_date) " +
+               "VALUES (:id, :uploadedBy, :fileName, :uploadLength, :chunkSize, :backend, " +
+               ":uploadHandle, :status, :createdDate, :expiresDate)")
+    void insert(@BindBean UploadSession session);
+
+    @SqlQuery("SELECT * FROM upload_session WHERE id = :id")
+    Optional<UploadSession> findById(@Bind("id") String id);
+
+    @SqlQuery("SELECT * FROM upload_session WHERE status = :status AND expires_date < :now " +
+              "ORDER BY expires_date LIMIT :limit")
+    List<UploadSession> findExpired(@Bind("status") String status, @Bind("now") Date now, @Bind("limit") int limit);
+
+    // Only one caller can move a session out of a status, which serialises completion
+    @SqlUpdate("UPDATE upload_session SET status = :newStatus WHERE id = :id AND status = :oldStatus")
+    int updateStatus(@Bind("id") String id, @Bind("oldStatus") String oldStatus, @Bind("newStatus") String newStatus);
+
+    @SqlUpdate("DELETE FROM upload_session WHERE id = :id")
+    int deleteById(@Bind("id") String id);
+
+    // Re-sending a chunk replaces it, so a retried PATCH is harmless
+    @SqlUpdate("INSERT INTO upload_chunk (session_id, chunk_index, chunk_length, etag) " +
+               "VALUES (:sessionId, :chunkIndex, :chunkLength, :etag) " +
+               "ON DUPLICATE KEY UPDATE chunk_length = :chunkLength, etag = :etag")
+    void upsertChunk(@BindBean UploadChunk chunk);
+
+    @SqlQuery("SELECT * FROM upload_chunk WHERE session_id = :sessionId ORDER BY chunk_index")
+    List<UploadChunk> findChunks(@Bind("sessionId") String sessionId);
+}
@@ -0,0 +1,18 @@
+package com.filestorage.db;
+
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+
+import java.util.Optional;
+
+public interface UserQuotaDAO {
+
+    // A single upsert, so concurrent adjustments for the same user never lose an update
+    @SqlUpdate("INSERT INTO user_quota (uploaded_by, used_bytes, file_count) VALUES (:uploadedBy, :bytes, :files) " +
+               "ON DUPLICATE KEY UPDATE used_bytes = used_bytes + :bytes, file_count = file_count + :files")
+    void adjust(@Bind("uploadedBy") String uploadedBy, @Bind("bytes") long bytes, @Bind("files") int files);
+
+    @SqlQuery("SELECT used_bytes FROM user_quota WHERE uploaded_by = :uploadedBy")
+    Optional<Long> findUsedBytes(@Bind("uploadedBy") String uploadedBy);
+}
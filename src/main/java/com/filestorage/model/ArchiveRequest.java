@@ -0,0 +1,32 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class ArchiveRequest {
+
+    @JsonProperty
+    private List<String> ids;
+
+    @JsonProperty
+    private String uploadedBy;
+
+    @JsonProperty
+    private List<String> tags;
+
+    @JsonProperty
+    private String name;
+
+    public List<String> getIds() { return ids; }
+    public void setIds(List<String> ids) { this.ids = ids; }
+
+    public String getUploadedBy() { return uploadedBy; }
+    public void setUploadedBy(String uploadedBy) { this.uploadedBy = uploadedBy; }
+
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+}
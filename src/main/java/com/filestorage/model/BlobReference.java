@@ -0,0 +1,63 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+
+public class BlobReference {
+
+    @JsonProperty
+    private String checksum;
+
+    @JsonProperty
+    private String storageLocation;
+
+    @JsonProperty
+    private long fileSize;
+
+    @JsonProperty
+    private String mimeType;
+
+    @JsonProperty
+    private String contentEncoding;
+
+    @JsonProperty
+    private int refCount;
+
+    @JsonProperty
+    private Date createdDate;
+
+    public BlobReference() {
+        this.createdDate = new Date();
+    }
+
+    public BlobReference(String checksum, String storageLocation, long fileSize, String mimeType) {
+        this();
+        this.checksum = checksum;
+        this.storageLocation = storageLocation;
+        this.fileSize = fileSize;
+        this.mimeType = mimeType;
+        this.refCount = 1;
+    }
+
+    public String getChecksum() { return checksum; }
+    public void setChecksum(String checksum) { this.checksum = checksum; }
+
+    public String getStorageLocation() { return storageLocation; }
+    public void setStorageLocation(String storageLocation) { this.storageLocation = storageLocation; }
+
+    public long getFileSize() { return fileSize; }
+    public void setFileSize(long fileSize) { this.fileSize = fileSize; }
+
+    public String getMimeType() { return mimeType; }
+    public void setMimeType(String mimeType) { this.mimeType = mimeType; }
+
+    public String getContentEncoding() { return contentEncoding; }
+    public void setContentEncoding(String contentEncoding) { this.contentEncoding = contentEncoding; }
+
+    public int getRefCount() { return refCount; }
+    public void setRefCount(int refCount) { this.refCount = refCount; }
+
+    public Date getCreatedDate() { return createdDate; }
+    public void setCreatedDate(Date createdDate) { this.createdDate = createdDate; }
+}
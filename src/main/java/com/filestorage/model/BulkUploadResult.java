@@ -0,0 +1,50 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkUploadResult {
+
+    @JsonProperty
+    private String fileName;
+
+    @JsonProperty
+    private int status;
+
+    @JsonProperty
+    private FileMetadata file;
+
+    @JsonProperty
+    private String error;
+
+    public BulkUploadResult() {
+    }
+
+    public BulkUploadResult(String fileName, int status, FileMetadata file, String error) {
+        this.fileName = fileName;
+        this.status = status;
+        this.file = file;
+        this.error = error;
+    }
+
+    public static BulkUploadResult stored(FileMetadata file) {
+        return new BulkUploadResult(file.getOriginalName(), 200, file, null);
+    }
+
+    public static BulkUploadResult failed(String fileName, int status, String error) {
+        return new BulkUploadResult(fileName, status, null, error);
+    }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+
+    public FileMetadata getFile() { return file; }
+    public void setFile(FileMetadata file) { this.file = file; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
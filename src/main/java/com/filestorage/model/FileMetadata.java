@@ -135,6 +135,10 @@ public class FileMetadata {
     public boolean isPublic() { return isPublic; }
     public void setPublic(boolean isPublic) { this.isPublic = isPublic; }
     
+    // Bean-style accessors so JDBI can bind :isPublic and map the is_public column
+    public boolean getIsPublic() { return isPublic; }
+    public void setIsPublic(boolean isPublic) { this.isPublic = isPublic; }
+    
     public String getContentEncoding() { return contentEncoding; }
     public void setContentEncoding(String contentEncoding) { this.contentEncoding = contentEncoding; }
     
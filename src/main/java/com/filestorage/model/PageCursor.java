@@ -0,0 +1,63 @@
+package com.filestorage.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Position in a listing ordered by (upload_date DESC, id DESC). Clients only ever see the
+ * opaque encoded form.
+ */
+public class PageCursor {
+    // Has no position; the first page is read without the keyset condition
+    public static final PageCursor FIRST = new PageCursor(null, "");
+
+    private final Date uploadDate;
+    private final String id;
+
+    public PageCursor(Date uploadDate, String id) {
+        this.uploadDate = uploadDate;
+        this.id = id;
+    }
+
+    public Date getUploadDate() { return uploadDate; }
+
+    public String getId() { return id; }
+
+    public boolean isFirst() {
+        return uploadDate == null;
+    }
+
+    public String encode() {
+        String raw = uploadDate.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+            return new PageCursor(new Date(Long.parseLong(raw.substring(0, separator))), raw.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+
+    public static PageCursor after(FileMetadata last) {
+        return new PageCursor(last.getUploadDate(), last.getId());
+    }
+
+    public static String nextCursor(List<FileMetadata> page, int limit) {
+        if (page.size() < limit || page.isEmpty()) {
+            return null;
+        }
+        return after(page.get(page.size() - 1)).encode();
+    }
+}
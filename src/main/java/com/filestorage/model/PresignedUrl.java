@@ -0,0 +1,53 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class PresignedUrl {
+
+    @JsonProperty
+    private String fileId;
+
+    @JsonProperty
+    private String method;
+
+    @JsonProperty
+    private String url;
+
+    // Signed request headers the client has to send unchanged
+    @JsonProperty
+    private Map<String, String> headers;
+
+    @JsonProperty
+    private Date expiresAt;
+
+    public PresignedUrl() {
+    }
+
+    public PresignedUrl(String fileId, String method, String url, Map<String, String> headers, Date expiresAt) {
+        this.fileId = fileId;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getFileId() { return fileId; }
+    public void setFileId(String fileId) { this.fileId = fileId; }
+
+    public String getMethod() { return method; }
+    public void setMethod(String method) { this.method = method; }
+
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+
+    public Map<String, String> getHeaders() { return headers; }
+    public void setHeaders(Map<String, String> headers) { this.headers = headers; }
+
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+}
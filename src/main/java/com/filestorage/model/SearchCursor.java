@@ -0,0 +1,54 @@
+package com.filestorage.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in search results ordered by (relevance DESC, id DESC). The relevance is kept
+ * at full precision so the next page resumes exactly after the last hit.
+ */
+public class SearchCursor {
+    public static final SearchCursor FIRST = new SearchCursor(Double.MAX_VALUE, "");
+
+    private final double relevance;
+    private final String id;
+
+    public SearchCursor(double relevance, String id) {
+        this.relevance = relevance;
+        this.id = id;
+    }
+
+    public double getRelevance() { return relevance; }
+
+    public String getId() { return id; }
+
+    public String encode() {
+        String raw = relevance + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SearchCursor decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+            return new SearchCursor(Double.parseDouble(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+
+    public static String nextCursor(List<SearchHit> page, int limit) {
+        if (page.size() < limit || page.isEmpty()) {
+            return null;
+        }
+        SearchHit last = page.get(page.size() - 1);
+        return new SearchCursor(last.getRelevance(), last.getFile().getId()).encode();
+    }
+}
@@ -0,0 +1,15 @@
+package com.filestorage.model;
+
+public class SearchHit {
+    private final FileMetadata file;
+    private final double relevance;
+
+    public SearchHit(FileMetadata file, double relevance) {
+        this.file = file;
+        this.relevance = relevance;
+    }
+
+    public FileMetadata getFile() { return file; }
+
+    public double getRelevance() { return relevance; }
+}
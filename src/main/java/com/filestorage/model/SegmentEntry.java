@@ -0,0 +1,50 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+
+public class SegmentEntry {
+
+    @JsonProperty
+    private String id;
+
+    @JsonProperty
+    private long segmentId;
+
+    @JsonProperty
+    private long entryOffset;
+
+    @JsonProperty
+    private int entryLength;
+
+    @JsonProperty
+    private Date createdDate;
+
+    public SegmentEntry() {
+        this.createdDate = new Date();
+    }
+
+    public SegmentEntry(String id, long segmentId, long entryOffset, int entryLength) {
+        this();
+        this.id = id;
+        this.segmentId = segmentId;
+        this.entryOffset = entryOffset;
+        this.entryLength = entryLength;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public long getSegmentId() { return segmentId; }
+    public void setSegmentId(long segmentId) { this.segmentId = segmentId; }
+
+    public long getEntryOffset() { return entryOffset; }
+    public void setEntryOffset(long entryOffset) { this.entryOffset = entryOffset; }
+
+    public int getEntryLength() { return entryLength; }
+    public void setEntryLength(int entryLength) { this.entryLength = entryLength; }
+
+    public Date getCreatedDate() { return createdDate; }
+    public void setCreatedDate(Date createdDate) { this.createdDate = createdDate; }
+}
@@ -0,0 +1,30 @@
+package com.filestorage.model;
+
+public class UploadChunk {
+    private String sessionId;
+    private int chunkIndex;
+    private long chunkLength;
+    private String etag;
+
+    public UploadChunk() {
+    }
+
+    public UploadChunk(String sessionId, int chunkIndex, long chunkLength, String etag) {
+        this.sessionId = sessionId;
+        this.chunkIndex = chunkIndex;
+        this.chunkLength = chunkLength;
+        this.etag = etag;
+    }
+
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+
+    public int getChunkIndex() { return chunkIndex; }
+    public void setChunkIndex(int chunkIndex) { this.chunkIndex = chunkIndex; }
+
+    public long getChunkLength() { return chunkLength; }
+    public void setChunkLength(long chunkLength) { this.chunkLength = chunkLength; }
+
+    public String getEtag() { return etag; }
+    public void setEtag(String etag) { this.etag = etag; }
+}
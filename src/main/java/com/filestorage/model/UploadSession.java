@@ -0,0 +1,100 @@
+package com.filestorage.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+import java.util.List;
+
+public class UploadSession {
+
+    @JsonProperty
+    private String id;
+
+    @JsonProperty
+    private String uploadedBy;
+
+    @JsonProperty
+    private String fileName;
+
+    @JsonProperty
+    private long uploadLength;
+
+    @JsonProperty
+    private int chunkSize;
+
+    @JsonIgnore
+    private String backend;
+
+    // S3 multipart upload id; unused by backends that write chunks in place
+    @JsonIgnore
+    private String uploadHandle;
+
+    @JsonProperty
+    private String status;
+
+    @JsonProperty
+    private Date createdDate;
+
+    @JsonProperty
+    private Date expiresDate;
+
+    // Filled in for progress responses, not stored on the session row
+    @JsonProperty
+    private long uploadOffset;
+
+    @JsonProperty
+    private List<Integer> receivedChunks;
+
+    public UploadSession() {
+        this.createdDate = new Date();
+    }
+
+    @JsonProperty
+    public int getChunkCount() {
+        return chunkSize > 0 ? (int) ((uploadLength + chunkSize - 1) / chunkSize) : 0;
+    }
+
+    /**
+     * Length of the chunk at {@code index}; every chunk but the last is exactly chunkSize.
+     */
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, uploadLength - (long) index * chunkSize);
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUploadedBy() { return uploadedBy; }
+    public void setUploadedBy(String uploadedBy) { this.uploadedBy = uploadedBy; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public long getUploadLength() { return uploadLength; }
+    public void setUploadLength(long uploadLength) { this.uploadLength = uploadLength; }
+
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
+    public String getBackend() { return backend; }
+    public void setBackend(String backend) { this.backend = backend; }
+
+    public String getUploadHandle() { return uploadHandle; }
+    public void setUploadHandle(String uploadHandle) { this.uploadHandle = uploadHandle; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Date getCreatedDate() { return createdDate; }
+    public void setCreatedDate(Date createdDate) { this.createdDate = createdDate; }
+
+    public Date getExpiresDate() { return expiresDate; }
+    public void setExpiresDate(Date expiresDate) { this.expiresDate = expiresDate; }
+
+    public long getUploadOffset() { return uploadOffset; }
+    public void setUploadOffset(long uploadOffset) { this.uploadOffset = uploadOffset; }
+
+    public List<Integer> getReceivedChunks() { return receivedChunks; }
+    public void setReceivedChunks(List<Integer> receivedChunks) { this.receivedChunks = receivedChunks; }
+}
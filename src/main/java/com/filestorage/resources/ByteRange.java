@@ -0,0 +1,83 @@
+package com.filestorage.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ByteRange {
+    private static final String BYTES_UNIT = "bytes=";
+    private static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() { return start; }
+
+    public long getEnd() { return end; }
+
+    public long getLength() { return end - start + 1; }
+
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * Parses a Range header against an entity of the given length. Returns an empty list
+     * when the header is absent, malformed or asks for too many ranges, in which case the
+     * whole entity is served, and null when none of the ranges can be satisfied.
+     */
+    public static List<ByteRange> parse(String header, long totalLength) {
+        if (header == null || !header.startsWith(BYTES_UNIT)) {
+            return Collections.emptyList();
+        }
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return Collections.emptyList();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return Collections.emptyList();
+            }
+
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // Suffix range: the final N bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(totalLength - suffix, 0);
+                    end = totalLength - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? totalLength - 1 : Math.min(Long.parseLong(last), totalLength - 1);
+                    if (end < start && !last.isEmpty() && Long.parseLong(last) < start) {
+                        return Collections.emptyList();
+                    }
+                }
+
+                if (start < totalLength && start <= end) {
+                    ranges.add(new ByteRange(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return Collections.emptyList();
+            }
+        }
+
+        return ranges.isEmpty() ? null : ranges;
+    }
+}
@@ -1,40 +1,345 @@
 package com.filestorage.resources;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.filestorage.config.FileStorageConfiguration;
 import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.model.ArchiveRequest;
+import com.filestorage.model.BulkUploadResult;
 import com.filestorage.model.FileMetadata;
+import com.filestorage.model.PresignedUrl;
+import com.filestorage.service.AccessTracker;
+import com.filestorage.service.ArchiveStreamer;
+import com.filestorage.service.CompressionPolicy;
 import com.filestorage.service.FileStorageService;
+import com.filestorage.service.PresignedUrlService;
+import com.filestorage.service.UploadRejectedException;
 import io.dropwizard.auth.Auth;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataParam;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Path("/files")
 @Produces(MediaType.APPLICATION_JSON)
 public class FileResource {
+    private static final String RANGE = "Range";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String IF_RANGE = "If-Range";
+    private static final int MIN_COPY_BUFFER = 8 * 1024;
+    private static final int MAX_COPY_BUFFER = 256 * 1024;
+
     private final FileMetadataDAO fileMetadataDAO;
     private final FileStorageService fileStorageService;
+    private final AccessTracker accessTracker;
+    private final ExecutorService transferExecutor;
+    private final long retryAfterSeconds;
+    private final ExecutorService bulkUploadExecutor;
+    private final int maxBulkFiles;
+    private final ArchiveStreamer archiveStreamer;
+    private final Meter uploadBytes = new Meter();
+    private final Meter downloadBytes = new Meter();
+    private final Timer timeToFirstByte = new Timer();
+    private final FileStorageConfiguration.HttpCacheConfig httpCacheConfig;
+    private final PresignedUrlService presignedUrlService;
 
-    public FileResource(FileMetadataDAO fileMetadataDAO, FileStorageService fileStorageService) {
+    public FileResource(FileMetadataDAO fileMetadataDAO, FileStorageService fileStorageService,
+                        AccessTracker accessTracker, ExecutorService transferExecutor, long retryAfterSeconds,
+                        ExecutorService bulkUploadExecutor, int maxBulkFiles, ArchiveStreamer archiveStreamer,
+                        FileStorageConfiguration.HttpCacheConfig httpCacheConfig,
+                        PresignedUrlService presignedUrlService) {
         this.fileMetadataDAO = fileMetadataDAO;
         this.fileStorageService = fileStorageService;
+        this.accessTracker = accessTracker;
+        this.transferExecutor = transferExecutor;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.bulkUploadExecutor = bulkUploadExecutor;
+        this.maxBulkFiles = maxBulkFiles;
+        this.archiveStreamer = archiveStreamer;
+        this.httpCacheConfig = httpCacheConfig;
+        this.presignedUrlService = presignedUrlService;
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(FileResource.class, "upload-bytes"), uploadBytes);
+        metrics.register(MetricRegistry.name(FileResource.class, "download-bytes"), downloadBytes);
+        metrics.register(MetricRegistry.name(FileResource.class, "time-to-first-byte"), timeToFirstByte);
     }
 
+    // Jersey reads and buffers the whole multipart body on the request thread before this runs,
+    // so only the backend write moves to the transfer pool; raw uploads below avoid that
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response uploadFile(@Auth Principal user,
-                               @FormDataParam("file") InputStream fileInputStream,
-                               @FormDataParam("file") FormDataContentDisposition fileDetail) {
+    public void uploadFile(@Auth Principal user,
+                           @FormDataParam("file") InputStream fileInputStream,
+                           @FormDataParam("file") FormDataContentDisposition fileDetail,
+                           @Suspended AsyncResponse asyncResponse) {
+        submitTransfer(asyncResponse, () -> storeUpload(user, fileInputStream, fileDetail.getFileName()));
+    }
+
+    /**
+     * Upload with the file as the raw request body. The body is only read on the transfer pool,
+     * so a slow client holds a transfer thread rather than a Jetty request thread.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public void uploadRawFile(@Auth Principal user,
+                              @QueryParam("fileName") String fileName,
+                              InputStream body,
+                              @Suspended AsyncResponse asyncResponse) {
+        if (fileName == null || fileName.isEmpty()) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileName is required")
+                    .build());
+            return;
+        }
+        submitTransfer(asyncResponse, () -> storeUpload(user, body, fileName));
+    }
+
+    private Response storeUpload(Principal user, InputStream fileInputStream, String fileName) {
         try {
-            FileMetadata metadata = fileStorageService.uploadFile(fileInputStream, fileDetail.getFileName(), user.getName());
-            fileMetadataDAO.insert(metadata);
+            FileMetadata metadata = fileStorageService.uploadFile(fileInputStream, fileName, user.getName());
+            uploadBytes.mark(metadata.getFileSize());
+            insertOrRelease(metadata);
             return Response.ok(metadata).build();
+        } catch (UploadRejectedException e) {
+            return rejected(e);
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("File upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @POST
+    @Path("/bulk")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public void uploadFiles(@Auth Principal user,
+                            @FormDataParam("files") List<FormDataBodyPart> parts,
+                            @Suspended AsyncResponse asyncResponse) {
+        if (parts == null || parts.isEmpty()) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("At least one file is required")
+                    .build());
+            return;
+        }
+        if (parts.size() > maxBulkFiles) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("At most " + maxBulkFiles + " files can be uploaded at once")
+                    .build());
+            return;
+        }
+        submitTransfer(asyncResponse, () -> storeUploads(user, parts));
+    }
+
+    private Response storeUploads(Principal user, List<FormDataBodyPart> parts) {
+        // Jersey has already buffered every part on the request thread, so they can be streamed to
+        // the backend concurrently; the receiving itself is not offloaded
+        List<Future<FileMetadata>> uploads = new ArrayList<>(parts.size());
+        for (FormDataBodyPart part : parts) {
+            String fileName = part.getContentDisposition().getFileName();
+            uploads.add(bulkUploadExecutor.submit(() ->
+                fileStorageService.uploadFile(part.getValueAs(InputStream.class), fileName, user.getName())));
+        }
+
+        BulkUploadResult[] results = new BulkUploadResult[parts.size()];
+        List<FileMetadata> stored = new ArrayList<>(parts.size());
+        List<Integer> storedIndexes = new ArrayList<>(parts.size());
+        for (int i = 0; i < uploads.size(); i++) {
+            String fileName = parts.get(i).getContentDisposition().getFileName();
+            try {
+                FileMetadata metadata = uploads.get(i).get();
+                uploadBytes.mark(metadata.getFileSize());
+                stored.add(metadata);
+                storedIndexes.add(i);
+            } catch (ExecutionException e) {
+                results[i] = failedUpload(fileName, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[i] = failedUpload(fileName, e);
+            }
+        }
+
+        if (!stored.isEmpty()) {
+            try {
+                fileMetadataDAO.insertFileMetadataBatch(stored);
+                for (int i = 0; i < stored.size(); i++) {
+                    results[storedIndexes.get(i)] = BulkUploadResult.stored(stored.get(i));
+                }
+            } catch (Exception batchFailure) {
+                // The batch is rolled back as a whole, so find the offending rows one insert at a time
+                for (int i = 0; i < stored.size(); i++) {
+                    FileMetadata metadata = stored.get(i);
+                    try {
+                        insertOrRelease(metadata);
+                        results[storedIndexes.get(i)] = BulkUploadResult.stored(metadata);
+                    } catch (Exception e) {
+                        results[storedIndexes.get(i)] = failedUpload(metadata.getOriginalName(), e);
+                    }
+                }
+            }
+        }
+        return Response.ok(List.of(results)).build();
+    }
+
+    private static BulkUploadResult failedUpload(String fileName, Throwable cause) {
+        if (cause instanceof UploadRejectedException) {
+            return BulkUploadResult.failed(fileName, rejected((UploadRejectedException) cause).getStatus(), cause.getMessage());
+        }
+        return BulkUploadResult.failed(fileName, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                "File upload failed: " + cause.getMessage());
+    }
+
+    @POST
+    @Path("/checksum/{checksum}")
+    public Response uploadByChecksum(@Auth Principal user,
+                                     @PathParam("checksum") String checksum,
+                                     @QueryParam("fileName") String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileName is required")
+                    .build();
+        }
+
+        // Knowing a hash proves nothing about holding the bytes, so only content the caller already
+        // stored can be copied this way; anything else is a 404 and does not reveal the blob exists
+        String normalized = checksum.toLowerCase();
+        if (fileMetadataDAO.countByChecksumAndUploadedBy(normalized, user.getName()) == 0) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        try {
+            Optional<FileMetadata> metadata = fileStorageService.uploadExisting(normalized, fileName, user.getName());
+            if (metadata.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            insertOrRelease(metadata.get());
+            return Response.ok(metadata.get()).build();
+        } catch (UploadRejectedException e) {
+            return rejected(e);
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("File upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @POST
+    @Path("/presigned")
+    public Response presignUpload(@Auth Principal user,
+                                  @QueryParam("fileName") String fileName,
+                                  @QueryParam("fileSize") Long fileSize) {
+        if (!presignedUrlService.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Presigned uploads are not enabled")
+                    .build();
+        }
+        if (fileName == null || fileName.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileName is required")
+                    .build();
+        }
+        if (fileSize == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileSize is required")
+                    .build();
+        }
+
+        try {
+            return Response.ok(presignedUrlService.presignUpload(fileName, fileSize, user.getName())).build();
+        } catch (UploadRejectedException e) {
+            return rejected(e);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Presigning upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @POST
+    @Path("/presigned/{fileId}/complete")
+    public Response completePresignedUpload(@Auth Principal user,
+                                            @PathParam("fileId") String fileId,
+                                            @QueryParam("fileName") String fileName) {
+        if (!presignedUrlService.isEnabled()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Presigned uploads are not enabled")
+                    .build();
+        }
+        if (fileName == null || fileName.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileName is required")
+                    .build();
+        }
+
+        // Completing twice must not charge twice
+        Optional<FileMetadata> existing = fileMetadataDAO.findById(fileId);
+        if (existing.isPresent()) {
+            return completedBy(user, existing.get());
+        }
+
+        try {
+            Optional<FileMetadata> metadata = presignedUrlService.completeUpload(fileId, fileName, user.getName());
+            if (metadata.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            try {
+                fileMetadataDAO.insert(metadata.get());
+            } catch (RuntimeException e) {
+                // Only this attempt's copy and charge are undone: a concurrent completion may own the row,
+                // and after any other failure the staged object is still there to complete again
+                fileStorageService.deleteFile(metadata.get());
+                existing = fileMetadataDAO.findById(fileId);
+                if (existing.isEmpty()) {
+                    throw e;
+                }
+                return completedBy(user, existing.get());
+            }
+            presignedUrlService.discardStaged(fileId, fileName);
+            uploadBytes.mark(metadata.get().getFileSize());
+            return Response.ok(metadata.get()).build();
+        } catch (UploadRejectedException e) {
+            return rejected(e);
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("File upload failed: " + e.getMessage())
@@ -42,28 +347,281 @@ public class FileResource {
         }
     }
 
+    @GET
+    @Path("/{fileId}/url")
+    public Response presignDownload(@Auth Principal user, @PathParam("fileId") String fileId) {
+        Optional<FileMetadata> metadata = fileMetadataDAO.findById(fileId);
+        if (metadata.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        try {
+            Optional<PresignedUrl> url = presignedUrlService.presignDownload(metadata.get());
+            if (url.isEmpty()) {
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("No presigned URL can be issued for this file")
+                        .build();
+            }
+            accessTracker.recordAccess(fileId);
+            return Response.ok(url.get()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Presigning download failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private static Response completedBy(Principal user, FileMetadata existing) {
+        return user.getName().equals(existing.getUploadedBy())
+                ? Response.ok(existing).build()
+                : Response.status(Response.Status.CONFLICT).build();
+    }
+
+    private static Response rejected(UploadRejectedException e) {
+        switch (e.getReason()) {
+            case MIME_TYPE_NOT_ALLOWED:
+                return Response.status(Response.Status.UNSUPPORTED_MEDIA_TYPE).entity(e.getMessage()).build();
+            case FILE_TOO_LARGE:
+            case QUOTA_EXCEEDED:
+                return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).entity(e.getMessage()).build();
+            default:
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    private void insertOrRelease(FileMetadata metadata) throws Exception {
+        try {
+            fileMetadataDAO.insert(metadata);
+        } catch (Exception e) {
+            fileStorageService.deleteFile(metadata);
+            throw e;
+        }
+    }
+
     @GET
     @Path("/{fileId}")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response downloadFile(@Auth Principal user, @PathParam("fileId") String fileId) {
+    public void downloadFile(@Auth Principal user,
+                             @PathParam("fileId") String fileId,
+                             @HeaderParam(RANGE) String rangeHeader,
+                             @HeaderParam(IF_RANGE) String ifRange,
+                             @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                             @Context Request request,
+                             @Context HttpServletResponse servletResponse,
+                             @Suspended AsyncResponse asyncResponse) {
+        long startNanos = System.nanoTime();
         Optional<FileMetadata> metadata = fileMetadataDAO.findById(fileId);
         if (metadata.isEmpty()) {
-            return Response.status(Response.Status.NOT_FOUND).build();
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+        FileMetadata file = metadata.get();
+        accessTracker.recordAccess(fileId);
+
+        // Revalidations are answered from metadata alone, the backend is never opened for them
+        boolean encoded = file.getContentEncoding() != null
+                && CompressionPolicy.accepts(acceptEncoding, file.getContentEncoding());
+        EntityTag entityTag = entityTag(file, encoded);
+        Date lastModified = file.getUploadDate();
+        Response.ResponseBuilder conditionalResponse = evaluatePreconditions(request, lastModified, entityTag);
+        if (conditionalResponse != null) {
+            asyncResponse.resume(withCacheHeaders(conditionalResponse, file, entityTag).build());
+            return;
+        }
+        String range = rangeHeader != null && ifRange != null && !ifRangeMatches(ifRange, entityTag, lastModified)
+                ? null
+                : rangeHeader;
+
+        // Ranges and conditional headers are replayed by the client against S3
+        if (presignedUrlService.isRedirectEnabled()) {
+            Optional<PresignedUrl> url = presignedUrlService.presignDownload(file);
+            if (url.isPresent()) {
+                asyncResponse.resume(Response.temporaryRedirect(URI.create(url.get().getUrl())).build());
+                return;
+            }
+        }
+
+        // Resuming from the transfer thread makes that thread, not Jetty's, write the body
+        if (file.getContentEncoding() != null) {
+            submitTransfer(asyncResponse, () -> metered(cacheable(
+                    buildEncodedDownload(file, acceptEncoding, servletResponse), file, entityTag), startNanos));
+            return;
+        }
+        submitTransfer(asyncResponse, () -> metered(cacheable(
+                buildDownload(file, range, servletResponse), file, entityTag), startNanos));
+    }
+
+    private static EntityTag entityTag(FileMetadata file, boolean encoded) {
+        if (file.getChecksum() == null) {
+            return null;
+        }
+        // Encoded and decoded bodies are different representations, so they need distinct tags
+        return new EntityTag(encoded ? file.getChecksum() + "-" + file.getContentEncoding() : file.getChecksum());
+    }
+
+    private static Response.ResponseBuilder evaluatePreconditions(Request request, Date lastModified, EntityTag entityTag) {
+        if (entityTag != null && lastModified != null) {
+            return request.evaluatePreconditions(lastModified, entityTag);
+        } else if (entityTag != null) {
+            return request.evaluatePreconditions(entityTag);
+        } else if (lastModified != null) {
+            return request.evaluatePreconditions(lastModified);
+        }
+        return null;
+    }
+
+    private static boolean ifRangeMatches(String ifRange, EntityTag entityTag, Date lastModified) {
+        // If-Range needs a strong match, so weak tags and other dates fall back to the full body
+        if (ifRange.startsWith("\"")) {
+            return entityTag != null && ifRange.equals("\"" + entityTag.getValue() + "\"");
+        }
+        return lastModified != null
+                && ifRange.equals(DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.toInstant().atZone(ZoneOffset.UTC)));
+    }
+
+    private Response cacheable(Response response, FileMetadata file, EntityTag entityTag) {
+        int status = response.getStatus();
+        if (status != Response.Status.OK.getStatusCode() && status != Response.Status.PARTIAL_CONTENT.getStatusCode()) {
+            return response;
+        }
+        return withCacheHeaders(Response.fromResponse(response), file, entityTag).build();
+    }
+
+    private Response.ResponseBuilder withCacheHeaders(Response.ResponseBuilder response, FileMetadata file, EntityTag entityTag) {
+        if (entityTag != null) {
+            response.tag(entityTag);
+        }
+        if (file.getUploadDate() != null) {
+            response.lastModified(file.getUploadDate());
+        }
+        return response.header(HttpHeaders.CACHE_CONTROL, file.isPublic()
+                ? httpCacheConfig.getPublicCacheControl()
+                : httpCacheConfig.getPrivateCacheControl());
+    }
+
+    @POST
+    @Path("/archive")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public void downloadArchive(@Auth Principal user, ArchiveRequest request, @Suspended AsyncResponse asyncResponse) {
+        long startNanos = System.nanoTime();
+        boolean byIds = request != null && request.getIds() != null && !request.getIds().isEmpty();
+        boolean byFilter = request != null && request.getUploadedBy() != null;
+        if (!byIds && !byFilter) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Either ids or uploadedBy is required")
+                    .build());
+            return;
+        }
+        if (byIds && request.getIds().size() > archiveStreamer.getMaxFiles()) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("At most " + archiveStreamer.getMaxFiles() + " files can be archived at once")
+                    .build());
+            return;
+        }
+        submitTransfer(asyncResponse, () -> metered(buildArchive(request, byIds), startNanos));
+    }
+
+    private Response buildArchive(ArchiveRequest request, boolean byIds) {
+        try {
+            List<FileMetadata> files = byIds ? findArchiveFiles(request.getIds()) : findArchiveFiles(request);
+            if (files.size() > archiveStreamer.getMaxFiles()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("At most " + archiveStreamer.getMaxFiles() + " files can be archived at once")
+                        .build();
+            }
+            if (files.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            files.forEach(file -> accessTracker.recordAccess(file.getId()));
+
+            String name = request.getName() != null ? request.getName().replace("\"", "") : "archive";
+            StreamingOutput output = outputStream -> archiveStreamer.write(files, outputStream);
+            return Response.ok(output)
+                    .type("application/zip")
+                    .header("Content-Disposition", "attachment; filename=\"" + name + ".zip\"")
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Archive download failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private List<FileMetadata> findArchiveFiles(List<String> ids) {
+        // One IN query, then back into the order the client asked for
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<String, FileMetadata> filesById = fileMetadataDAO.findByIds(distinctIds).stream()
+                .collect(Collectors.toMap(FileMetadata::getId, Function.identity()));
+        return distinctIds.stream()
+                .map(filesById::get)
+                .filter(file -> file != null)
+                .collect(Collectors.toList());
+    }
+
+    private List<FileMetadata> findArchiveFiles(ArchiveRequest request) {
+        // The first tag narrows the query, the rest are matched exactly here
+        List<String> tags = request.getTags() != null ? request.getTags() : List.of();
+        String pattern = tags.isEmpty() ? "%" : "%" + tags.get(0) + "%";
+        return fileMetadataDAO.findByUploadedByAndTags(request.getUploadedBy(), pattern, archiveStreamer.getMaxFiles() + 1)
+                .stream()
+                .filter(file -> hasTags(file, tags))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean hasTags(FileMetadata file, List<String> tags) {
+        if (tags.isEmpty()) {
+            return true;
+        }
+        if (file.getTags() == null) {
+            return false;
         }
+        Set<String> fileTags = Arrays.stream(file.getTags().split(","))
+                .map(String::trim)
+                .collect(Collectors.toSet());
+        return fileTags.containsAll(tags);
+    }
 
+    private Response buildEncodedDownload(FileMetadata metadata, String acceptEncoding, HttpServletResponse servletResponse) {
+        // Ranges of a compressed file would be ranges of the encoded bytes, so they are not offered
+        String encoding = metadata.getContentEncoding();
+        String disposition = "attachment; filename=\"" + metadata.getFileName() + "\"";
         try {
-            InputStream fileStream = fileStorageService.downloadFile(metadata.get().getStoragePath());
+            if (CompressionPolicy.accepts(acceptEncoding, encoding)) {
+                Optional<java.nio.file.Path> localPath = fileStorageService.resolveLocalPath(metadata.getStoragePath());
+                Response.ResponseBuilder response;
+                if (localPath.isPresent()) {
+                    long storedLength = Files.size(localPath.get());
+                    response = Response.ok(new ZeroCopyFileOutput(localPath.get(), 0, storedLength, servletResponse))
+                            .header(HttpHeaders.CONTENT_LENGTH, storedLength);
+                } else {
+                    InputStream storedStream = fileStorageService.downloadFile(metadata.getStoragePath());
+                    response = Response.ok((StreamingOutput) outputStream -> {
+                        try (InputStream in = storedStream) {
+                            copy(in, outputStream, metadata.getFileSize());
+                        }
+                    });
+                }
+                return response
+                        .header(HttpHeaders.CONTENT_ENCODING, encoding)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                        .header("Content-Disposition", disposition)
+                        .header(ACCEPT_RANGES, "none")
+                        .build();
+            }
+
+            // Decoding on the fly means the body is no longer a file region, so no zero-copy here
+            InputStream decodedStream = fileStorageService.downloadDecoded(metadata);
             StreamingOutput output = outputStream -> {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = fileStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
+                try (InputStream in = decodedStream) {
+                    copy(in, outputStream, metadata.getFileSize());
                 }
-                fileStream.close();
             };
-
             return Response.ok(output)
-                    .header("Content-Disposition", "attachment; filename=\"" + metadata.get().getFileName() + "\"")
+                    .header(HttpHeaders.CONTENT_LENGTH, metadata.getFileSize())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .header("Content-Disposition", disposition)
+                    .header(ACCEPT_RANGES, "none")
                     .build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -72,6 +630,126 @@ public class FileResource {
         }
     }
 
+    private Response buildDownload(FileMetadata metadata, String rangeHeader, HttpServletResponse servletResponse) {
+        String storagePath = metadata.getStoragePath();
+        long totalLength = metadata.getFileSize();
+        List<ByteRange> ranges = ByteRange.parse(rangeHeader, totalLength);
+        if (ranges == null) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(CONTENT_RANGE, "bytes */" + totalLength)
+                    .build();
+        }
+
+        try {
+            String disposition = "attachment; filename=\"" + metadata.getFileName() + "\"";
+
+            Optional<java.nio.file.Path> localPath = fileStorageService.resolveLocalPath(storagePath);
+
+            if (ranges.isEmpty()) {
+                StreamingOutput output;
+                if (localPath.isPresent()) {
+                    output = new ZeroCopyFileOutput(localPath.get(), 0, totalLength, servletResponse);
+                } else {
+                    InputStream fileStream = fileStorageService.downloadFile(storagePath);
+                    output = outputStream -> {
+                        try (InputStream in = fileStream) {
+                            copy(in, outputStream, totalLength);
+                        }
+                    };
+                }
+                return Response.ok(output)
+                        .header(HttpHeaders.CONTENT_LENGTH, totalLength)
+                        .header("Content-Disposition", disposition)
+                        .header(ACCEPT_RANGES, "bytes")
+                        .build();
+            }
+
+            if (ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                StreamingOutput output;
+                if (localPath.isPresent()) {
+                    output = new ZeroCopyFileOutput(localPath.get(), range.getStart(), range.getLength(), servletResponse);
+                } else {
+                    InputStream rangeStream = fileStorageService.downloadFileRange(storagePath, range.getStart(), range.getLength());
+                    output = outputStream -> {
+                        try (InputStream in = rangeStream) {
+                            copy(in, outputStream, range.getLength());
+                        }
+                    };
+                }
+                return Response.status(Response.Status.PARTIAL_CONTENT)
+                        .entity(output)
+                        .header("Content-Disposition", disposition)
+                        .header(ACCEPT_RANGES, "bytes")
+                        .header(CONTENT_RANGE, range.toContentRange(totalLength))
+                        .header(HttpHeaders.CONTENT_LENGTH, range.getLength())
+                        .build();
+            }
+
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            String partType = metadata.getMimeType() != null ? metadata.getMimeType() : MediaType.APPLICATION_OCTET_STREAM;
+            StreamingOutput output = outputStream -> {
+                for (ByteRange range : ranges) {
+                    String partHeader = "\r\n--" + boundary + "\r\n" +
+                            HttpHeaders.CONTENT_TYPE + ": " + partType + "\r\n" +
+                            CONTENT_RANGE + ": " + range.toContentRange(totalLength) + "\r\n\r\n";
+                    outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                    try (InputStream in = fileStorageService.downloadFileRange(storagePath, range.getStart(), range.getLength())) {
+                        copy(in, outputStream, range.getLength());
+                    }
+                }
+                outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            };
+            return Response.status(Response.Status.PARTIAL_CONTENT)
+                    .entity(output)
+                    .type("multipart/byteranges; boundary=" + boundary)
+                    .header("Content-Disposition", disposition)
+                    .header(ACCEPT_RANGES, "bytes")
+                    .build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("File download failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private Response metered(Response response, long startNanos) {
+        if (!(response.getEntity() instanceof StreamingOutput)) {
+            return response;
+        }
+        StreamingOutput body = (StreamingOutput) response.getEntity();
+        return Response.fromResponse(response)
+                .entity(new MeteredOutput(body, startNanos, response.getLength(), downloadBytes, timeToFirstByte))
+                .build();
+    }
+
+    private void submitTransfer(AsyncResponse asyncResponse, Supplier<Response> transfer) {
+        try {
+            transferExecutor.execute(() -> {
+                try {
+                    asyncResponse.resume(transfer.get());
+                } catch (RuntimeException e) {
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .entity("Too many concurrent transfers, retry later")
+                    .build());
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long expectedLength) throws IOException {
+        // Small bodies keep the old 8KB buffer, large ones move in bigger chunks
+        int bufferSize = (int) Math.max(MIN_COPY_BUFFER, Math.min(MAX_COPY_BUFFER, expectedLength / 16));
+        byte[] buffer = new byte[bufferSize];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+        }
+    }
+
     @DELETE
     @Path("/{fileId}")
     public Response deleteFile(@Auth Principal user, @PathParam("fileId") String fileId) {
@@ -81,8 +759,11 @@ public class FileResource {
         }
 
         try {
-            fileStorageService.deleteFile(metadata.get().getStoragePath());
-            fileMetadataDAO.deleteById(fileId);
+            // Only the request that removes the row releases its blob reference and quota
+            if (fileMetadataDAO.deleteById(fileId) == 0) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            fileStorageService.deleteFile(metadata.get());
             return Response.noContent().build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
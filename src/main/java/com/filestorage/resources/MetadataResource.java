@@ -2,6 +2,9 @@ package com.filestorage.resources;
 
 import com.filestorage.db.FileMetadataDAO;
 import com.filestorage.model.FileMetadata;
+import com.filestorage.model.PageCursor;
+import com.filestorage.model.SearchCursor;
+import com.filestorage.model.SearchHit;
 import io.dropwizard.auth.Auth;
 
 import javax.ws.rs.*;
@@ -10,16 +13,71 @@ import javax.ws.rs.core.Response;
 import java.security.Principal;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Path("/metadata")
 @Produces(MediaType.APPLICATION_JSON)
 public class MetadataResource {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_SEARCH_LIMIT = 100;
+
     private final FileMetadataDAO fileMetadataDAO;
 
     public MetadataResource(FileMetadataDAO fileMetadataDAO) {
         this.fileMetadataDAO = fileMetadataDAO;
     }
 
+    @GET
+    @Path("/search")
+    public Response search(@Auth Principal user,
+                           @QueryParam("q") String query,
+                           @QueryParam("visibility") @DefaultValue("all") String visibility,
+                           @QueryParam("mimeType") String mimeType,
+                           @QueryParam("limit") @DefaultValue("20") int limit,
+                           @QueryParam("cursor") String cursor) {
+        if (query == null || query.isBlank()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("q is required").build();
+        }
+
+        boolean includeOwn;
+        boolean includePublic;
+        switch (visibility) {
+            case "own":
+                includeOwn = true;
+                includePublic = false;
+                break;
+            case "public":
+                includeOwn = false;
+                includePublic = true;
+                break;
+            case "all":
+                includeOwn = true;
+                includePublic = true;
+                break;
+            default:
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("visibility must be one of own, public, all")
+                        .build();
+        }
+
+        SearchCursor searchCursor;
+        try {
+            searchCursor = SearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+        List<SearchHit> hits = fileMetadataDAO.searchPage(query, user.getName(), includeOwn, includePublic,
+                mimeType, searchCursor, pageSize);
+        Response.ResponseBuilder response = Response.ok(hits.stream().map(SearchHit::getFile).collect(Collectors.toList()));
+        String nextCursor = SearchCursor.nextCursor(hits, pageSize);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.build();
+    }
+
     @GET
     @Path("/{fileId}")
     public Response getFileMetadata(@Auth Principal user, @PathParam("fileId") String fileId) {
@@ -33,9 +91,28 @@ public class MetadataResource {
     @GET
     public Response getUserFiles(@Auth Principal user, 
                                  @QueryParam("page") @DefaultValue("1") int page,
-                                 @QueryParam("limit") @DefaultValue("10") int limit) {
-        List<FileMetadata> files = fileMetadataDAO.findByUploadedByPaginated(user.getName(), page, limit);
-        return Response.ok(files).build();
+                                 @QueryParam("limit") @DefaultValue("10") int limit,
+                                 @QueryParam("cursor") String cursor) {
+        // Deep offset pages are kept for existing clients; the cursor path costs the same at any depth
+        if (cursor == null && page > 1) {
+            List<FileMetadata> files = fileMetadataDAO.findByUploadedByPaginated(user.getName(), page, limit);
+            return Response.ok(files).build();
+        }
+
+        PageCursor pageCursor;
+        try {
+            pageCursor = PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        List<FileMetadata> files = fileMetadataDAO.findByUploadedByPage(user.getName(), pageCursor, limit);
+        Response.ResponseBuilder response = Response.ok(files);
+        String nextCursor = PageCursor.nextCursor(files, limit);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.build();
     }
 
     @PUT
@@ -0,0 +1,80 @@
+package com.filestorage.resources;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks the bytes of a response body and the time from request arrival until the response
+ * is first committed. Bodies written past the stream, like {@link ZeroCopyFileOutput}, are
+ * counted by their declared length.
+ */
+public class MeteredOutput implements StreamingOutput {
+    private final StreamingOutput delegate;
+    private final long startNanos;
+    private final long declaredLength;
+    private final Meter bytes;
+    private final Timer timeToFirstByte;
+
+    public MeteredOutput(StreamingOutput delegate, long startNanos, long declaredLength, Meter bytes, Timer timeToFirstByte) {
+        this.delegate = delegate;
+        this.startNanos = startNanos;
+        this.declaredLength = declaredLength;
+        this.bytes = bytes;
+        this.timeToFirstByte = timeToFirstByte;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        CountingOutput counting = new CountingOutput(outputStream);
+        boolean completed = false;
+        try {
+            delegate.write(counting);
+            completed = true;
+        } finally {
+            long sent = counting.count == 0 && completed && declaredLength > 0 ? declaredLength : counting.count;
+            bytes.mark(sent);
+        }
+    }
+
+    private final class CountingOutput extends FilterOutputStream {
+        private long count;
+        private boolean committed;
+
+        private CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            firstByte();
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            firstByte();
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            firstByte();
+            out.flush();
+        }
+
+        private void firstByte() {
+            if (!committed) {
+                committed = true;
+                timeToFirstByte.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.filestorage.resources;
+
+import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.UploadSession;
+import com.filestorage.service.FileStorageService;
+import com.filestorage.service.ResumableUploadService;
+import com.filestorage.service.UploadRejectedException;
+import io.dropwizard.auth.Auth;
+
+import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * tus-style resumable uploads: create a session, PATCH chunks at their offsets (in
+ * parallel if the client likes), check progress with HEAD or GET, then complete.
+ */
+@Path("/uploads")
+@Produces(MediaType.APPLICATION_JSON)
+public class ResumableUploadResource {
+    static final String UPLOAD_LENGTH = "Upload-Length";
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String OFFSET_OCTET_STREAM = "application/offset+octet-stream";
+
+    private final ResumableUploadService resumableUploadService;
+    private final FileStorageService fileStorageService;
+    private final FileMetadataDAO fileMetadataDAO;
+    private final ExecutorService transferExecutor;
+    private final long retryAfterSeconds;
+
+    public ResumableUploadResource(ResumableUploadService resumableUploadService, FileStorageService fileStorageService,
+                                   FileMetadataDAO fileMetadataDAO, ExecutorService transferExecutor,
+                                   long retryAfterSeconds) {
+        this.resumableUploadService = resumableUploadService;
+        this.fileStorageService = fileStorageService;
+        this.fileMetadataDAO = fileMetadataDAO;
+        this.transferExecutor = transferExecutor;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @POST
+    public Response create(@Auth Principal user,
+                           @QueryParam("fileName") String fileName,
+                           @HeaderParam(UPLOAD_LENGTH) Long uploadLength) {
+        if (fileName == null || fileName.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("fileName is required")
+                    .build();
+        }
+        if (uploadLength == null) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(UPLOAD_LENGTH + " is required")
+                    .build();
+        }
+
+        try {
+            UploadSession session = resumableUploadService.create(fileName, uploadLength, user.getName());
+            return Response.created(URI.create("uploads/" + session.getId()))
+                    .header(UPLOAD_OFFSET, 0)
+                    .entity(session)
+                    .build();
+        } catch (UploadRejectedException e) {
+            return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).entity(e.getMessage()).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Creating upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @HEAD
+    @Path("/{uploadId}")
+    public Response head(@Auth Principal user, @PathParam("uploadId") String uploadId) {
+        Optional<UploadSession> session = resumableUploadService.find(uploadId, user.getName());
+        if (session.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok()
+                .header(UPLOAD_OFFSET, session.get().getUploadOffset())
+                .header(UPLOAD_LENGTH, session.get().getUploadLength())
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    @GET
+    @Path("/{uploadId}")
+    public Response progress(@Auth Principal user, @PathParam("uploadId") String uploadId) {
+        Optional<UploadSession> session = resumableUploadService.find(uploadId, user.getName());
+        if (session.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(session.get())
+                .header(UPLOAD_OFFSET, session.get().getUploadOffset())
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    @PATCH
+    @Path("/{uploadId}")
+    @Consumes({OFFSET_OCTET_STREAM, MediaType.APPLICATION_OCTET_STREAM})
+    public void writeChunk(@Auth Principal user,
+                           @PathParam("uploadId") String uploadId,
+                           @HeaderParam(UPLOAD_OFFSET) Long offset,
+                           @HeaderParam(HttpHeaders.CONTENT_LENGTH) Long contentLength,
+                           InputStream body,
+                           @Suspended AsyncResponse asyncResponse) {
+        Optional<UploadSession> session = resumableUploadService.find(uploadId, user.getName());
+        if (session.isEmpty()) {
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+        if (offset == null) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(UPLOAD_OFFSET + " is required")
+                    .build());
+            return;
+        }
+        // A chunk of the wrong size is refused before any of it is written; bad offsets are left to the service
+        if (contentLength != null && offset >= 0 && offset < session.get().getUploadLength()) {
+            long expected = session.get().chunkLength((int) (offset / session.get().getChunkSize()));
+            if (contentLength != expected) {
+                asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Chunk at offset " + offset + " must be " + expected + " bytes")
+                        .build());
+                return;
+            }
+        }
+
+        submitTransfer(asyncResponse, () -> {
+            try {
+                UploadSession updated = resumableUploadService.writeChunk(session.get(), offset, body);
+                return Response.noContent()
+                        .header(UPLOAD_OFFSET, updated.getUploadOffset())
+                        .build();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+            } catch (IllegalStateException e) {
+                return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity("Chunk upload failed: " + e.getMessage())
+                        .build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/{uploadId}/complete")
+    public Response complete(@Auth Principal user, @PathParam("uploadId") String uploadId) {
+        Optional<UploadSession> session = resumableUploadService.find(uploadId, user.getName());
+        if (session.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        try {
+            FileMetadata metadata = resumableUploadService.complete(session.get());
+            insertOrRelease(metadata);
+            return Response.ok(metadata).build();
+        } catch (UploadRejectedException e) {
+            return Response.status(e.getReason() == UploadRejectedException.Reason.MIME_TYPE_NOT_ALLOWED
+                    ? Response.Status.UNSUPPORTED_MEDIA_TYPE
+                    : Response.Status.REQUEST_ENTITY_TOO_LARGE).entity(e.getMessage()).build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Completing upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    @DELETE
+    @Path("/{uploadId}")
+    public Response abort(@Auth Principal user, @PathParam("uploadId") String uploadId) {
+        Optional<UploadSession> session = resumableUploadService.find(uploadId, user.getName());
+        if (session.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        try {
+            resumableUploadService.abort(session.get());
+            return Response.noContent().build();
+        } catch (IllegalStateException e) {
+            return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Aborting upload failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private void insertOrRelease(FileMetadata metadata) throws Exception {
+        try {
+            fileMetadataDAO.insert(metadata);
+        } catch (Exception e) {
+            fileStorageService.deleteFile(metadata);
+            throw e;
+        }
+    }
+
+    private void submitTransfer(AsyncResponse asyncResponse, Supplier<Response> transfer) {
+        try {
+            transferExecutor.execute(() -> {
+                try {
+                    asyncResponse.resume(transfer.get());
+                } catch (RuntimeException e) {
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .entity("Too many concurrent transfers, retry later")
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.filestorage.resources;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a region of a local file without pumping it through a heap buffer. On Jetty the
+ * region is memory-mapped and handed to the connector, which writes it to the socket
+ * straight from the page cache; elsewhere it falls back to FileChannel.transferTo.
+ */
+public class ZeroCopyFileOutput implements StreamingOutput {
+    private static final long MAPPED_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final long TRANSFER_CHUNK_SIZE = 1024L * 1024;
+
+    private final Path path;
+    private final long position;
+    private final long length;
+    private final HttpServletResponse response;
+
+    public ZeroCopyFileOutput(Path path, long position, long length, HttpServletResponse response) {
+        this.path = path;
+        this.position = position;
+        this.length = length;
+        this.response = response;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Commit the status line and headers through Jersey before touching the raw connector stream
+            outputStream.flush();
+
+            ServletOutputStream servletOutput = response != null ? response.getOutputStream() : null;
+            if (servletOutput instanceof HttpOutput) {
+                HttpOutput httpOutput = (HttpOutput) servletOutput;
+                long offset = position;
+                long remaining = length;
+                while (remaining > 0) {
+                    long chunk = Math.min(remaining, MAPPED_CHUNK_SIZE);
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, chunk);
+                    httpOutput.write(mapped);
+                    offset += chunk;
+                    remaining -= chunk;
+                }
+                return;
+            }
+
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long offset = position;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(offset, Math.min(remaining, TRANSFER_CHUNK_SIZE), target);
+                if (transferred <= 0) {
+                    break;
+                }
+                offset += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+}
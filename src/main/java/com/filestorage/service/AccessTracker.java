@@ -0,0 +1,116 @@
+package com.filestorage.service;
+
+import com.filestorage.db.FileMetadataDAO;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces last_accessed updates in memory and writes them behind in JDBI batches. Only
+ * the newest timestamp per file id survives between flushes, so a hot file costs one
+ * UPDATE per interval no matter how often it is downloaded.
+ */
+public class AccessTracker implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessTracker.class);
+
+    private final FileMetadataDAO fileMetadataDAO;
+    private final Duration flushInterval;
+    private final int batchSize;
+    // ConcurrentHashMap stripes its bins, so concurrent downloads of different files do not contend
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public AccessTracker(FileMetadataDAO fileMetadataDAO, Duration flushInterval, int batchSize) {
+        this.fileMetadataDAO = fileMetadataDAO;
+        this.flushInterval = flushInterval;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public void recordAccess(String fileId) {
+        pending.merge(fileId, System.currentTimeMillis(), Math::max);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-tracker-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMilliseconds();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        flusher.shutdown();
+        flusher.awaitTermination(flushInterval.toMilliseconds(), TimeUnit.MILLISECONDS);
+        // Drain whatever arrived since the last scheduled flush
+        flush();
+    }
+
+    public int flush() {
+        List<String> ids = new ArrayList<>(batchSize);
+        List<Date> timestamps = new ArrayList<>(batchSize);
+        int flushed = 0;
+
+        for (Map.Entry<String, Long> entry : pending.entrySet()) {
+            // Only take entries that were not bumped meanwhile; newer timestamps wait for the next flush
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            ids.add(entry.getKey());
+            timestamps.add(new Date(entry.getValue()));
+            if (ids.size() >= batchSize) {
+                flushed += writeBatch(ids, timestamps);
+            }
+        }
+        flushed += writeBatch(ids, timestamps);
+        return flushed;
+    }
+
+    private int writeBatch(List<String> ids, List<Date> timestamps) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int size = ids.size();
+        try {
+            fileMetadataDAO.updateLastAccessedBatch(ids, timestamps);
+        } catch (RuntimeException e) {
+            // Put the batch back so the next flush retries it
+            for (int i = 0; i < size; i++) {
+                pending.merge(ids.get(i), timestamps.get(i).getTime(), Math::max);
+            }
+            throw e;
+        } finally {
+            ids.clear();
+            timestamps.clear();
+        }
+        return size;
+    }
+
+    private void flushQuietly() {
+        try {
+            int flushed = flush();
+            if (flushed > 0) {
+                LOGGER.debug("Flushed last_accessed for {} files", flushed);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to flush last_accessed updates", e);
+        }
+    }
+}
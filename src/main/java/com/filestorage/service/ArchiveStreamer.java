@@ -0,0 +1,210 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams many files into a single ZIP. The next few entries are opened on a prefetch pool,
+ * and small remote objects read into memory, while the current entry is written, so the
+ * response does not stall on backend latency between entries.
+ */
+public class ArchiveStreamer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveStreamer.class);
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final ExecutorService prefetchExecutor;
+    private final int maxFiles;
+    private final int prefetchDepth;
+    private final long maxPrefetchBytes;
+    private final List<String> storedMimeTypes;
+
+    public ArchiveStreamer(FileStorageService fileStorageService, ExecutorService prefetchExecutor,
+                           FileStorageConfiguration.ArchiveConfig config) {
+        this.fileStorageService = fileStorageService;
+        this.prefetchExecutor = prefetchExecutor;
+        this.maxFiles = config.getMaxFiles();
+        this.prefetchDepth = Math.max(config.getPrefetchDepth(), 1);
+        this.maxPrefetchBytes = config.getMaxPrefetchBytes();
+        this.storedMimeTypes = config.getStoredMimeTypes();
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void write(List<FileMetadata> files, OutputStream outputStream) throws IOException {
+        // Finished rather than closed, the container owns the response stream
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        Deque<Prefetch> window = new ArrayDeque<>(prefetchDepth);
+        Set<String> entryNames = new HashSet<>();
+        int next = 0;
+        try {
+            while (next < files.size() && window.size() < prefetchDepth) {
+                window.add(prefetch(files.get(next++)));
+            }
+            while (!window.isEmpty()) {
+                Entry entry = await(window.poll().future);
+                if (next < files.size()) {
+                    window.add(prefetch(files.get(next++)));
+                }
+                writeEntry(zip, entry, uniqueName(entryNames, entry.metadata));
+            }
+            zip.finish();
+        } finally {
+            for (Prefetch pending : window) {
+                pending.discard();
+            }
+        }
+    }
+
+    private Prefetch prefetch(FileMetadata metadata) {
+        Prefetch prefetch = new Prefetch();
+        prefetch.future = prefetchExecutor.submit(() -> {
+            InputStream in = prefetch.adopt(fileStorageService.downloadDecoded(metadata));
+            boolean remote = fileStorageService.isRemote(metadata.getStoragePath());
+            if (remote && metadata.getFileSize() != null && metadata.getFileSize() <= maxPrefetchBytes) {
+                try (InputStream body = in) {
+                    return new Entry(metadata, IOUtils.toByteArray(body), null);
+                }
+            }
+            return new Entry(metadata, null, in);
+        });
+        return prefetch;
+    }
+
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while prefetching archive entry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to open archive entry", cause);
+        }
+    }
+
+    /**
+     * A prefetch in flight. The task hands its opened stream over before using it, so a
+     * discard closes it whether the task has finished, is still running or opens it later.
+     */
+    private static final class Prefetch {
+        private Future<Entry> future;
+        private InputStream opened;
+        private boolean discarded;
+
+        InputStream adopt(InputStream in) throws IOException {
+            synchronized (this) {
+                if (!discarded) {
+                    opened = in;
+                    return in;
+                }
+            }
+            in.close();
+            throw new InterruptedIOException("Archive entry discarded");
+        }
+
+        void discard() {
+            InputStream toClose;
+            synchronized (this) {
+                discarded = true;
+                toClose = opened;
+                opened = null;
+            }
+            future.cancel(true);
+            if (toClose != null) {
+                try {
+                    toClose.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Closing discarded archive entry failed", e);
+                }
+            }
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, Entry entry, String name) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (entry.metadata.getUploadDate() != null) {
+            zipEntry.setTime(entry.metadata.getUploadDate().getTime());
+        }
+        boolean precompressed = CompressionPolicy.matchesAny(entry.metadata.getMimeType(), storedMimeTypes);
+
+        if (precompressed && entry.data != null) {
+            // STORED needs the CRC up front, which is only known for buffered entries
+            CRC32 crc = new CRC32();
+            crc.update(entry.data);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(entry.data.length);
+            zipEntry.setCompressedSize(entry.data.length);
+            zipEntry.setCrc(crc.getValue());
+        } else {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            zip.setLevel(precompressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        }
+
+        zip.putNextEntry(zipEntry);
+        if (entry.data != null) {
+            zip.write(entry.data);
+        } else {
+            try (InputStream in = entry.stream) {
+                IOUtils.copy(in, zip, COPY_BUFFER_SIZE);
+            }
+        }
+        zip.closeEntry();
+    }
+
+    private static String uniqueName(Set<String> entryNames, FileMetadata metadata) {
+        String name = metadata.getFileName() == null || metadata.getFileName().isBlank()
+            ? metadata.getId()
+            : metadata.getFileName().replace('/', '_').replace('\\', '_');
+        if (entryNames.add(name)) {
+            return name;
+        }
+
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int copy = 2; ; copy++) {
+            String candidate = base + " (" + copy + ")" + extension;
+            if (entryNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final FileMetadata metadata;
+        private final byte[] data;
+        private final InputStream stream;
+
+        private Entry(FileMetadata metadata, byte[] data, InputStream stream) {
+            this.metadata = metadata;
+            this.data = data;
+            this.stream = stream;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.filestorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * A {@link StorageBackend} that can assemble one object from chunks written independently
+ * and in any order, for resumable uploads. The handle returned by {@link #beginChunked}
+ * is persisted with the session, so chunks may arrive on another node or after a restart.
+ */
+public interface ChunkedUploadTarget {
+
+    String beginChunked(String fileId, String storedName, long length) throws IOException;
+
+    /**
+     * Writes the chunk at {@code index}, which starts at {@code offset} and is exactly
+     * {@code length} bytes long. Returns a token to hand back on completion, or null.
+     */
+    String writeChunk(String fileId, String storedName, String handle, int index, long offset,
+                      long length, InputStream inputStream) throws IOException;
+
+    /**
+     * Assembles the chunks, given as index to token, and returns the object's location.
+     */
+    String completeChunked(String fileId, String storedName, String handle, Map<Integer, String> chunks) throws IOException;
+
+    void abortChunked(String fileId, String storedName, String handle) throws IOException;
+}
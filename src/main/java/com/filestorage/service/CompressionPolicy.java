@@ -0,0 +1,201 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides which uploads are compressed at rest and with which Content-Encoding. Stored
+ * bytes carry the encoding name in file_metadata.content_encoding so downloads can either
+ * pass them through or decode them.
+ */
+public class CompressionPolicy {
+    public static final String GZIP = "gzip";
+    public static final String ZSTD = "zstd";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final boolean enabled;
+    private final String algorithm;
+    private final int level;
+    private final List<String> mimeTypes;
+
+    public CompressionPolicy(FileStorageConfiguration.CompressionConfig config) {
+        this.enabled = config.isEnabled();
+        this.algorithm = config.getAlgorithm().toLowerCase(Locale.ROOT);
+        this.level = config.getLevel();
+        this.mimeTypes = config.getMimeTypes();
+        if (!GZIP.equals(algorithm) && !ZSTD.equals(algorithm)) {
+            throw new IllegalArgumentException("Unsupported compression algorithm: " + config.getAlgorithm());
+        }
+    }
+
+    public Optional<String> encodingFor(String mimeType) {
+        if (!enabled || !matchesAny(mimeType, mimeTypes)) {
+            return Optional.empty();
+        }
+        return Optional.of(algorithm);
+    }
+
+    /**
+     * Matches a MIME type against exact types and {@code type/*} wildcards.
+     */
+    static boolean matchesAny(String mimeType, List<String> patterns) {
+        if (mimeType == null) {
+            return false;
+        }
+        for (String pattern : patterns) {
+            boolean matches = pattern.endsWith("/*")
+                ? mimeType.startsWith(pattern.substring(0, pattern.length() - 1))
+                : mimeType.equals(pattern);
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a stream of the compressed form of {@code source}, produced a chunk at a time
+     * as it is read. Closing it releases the encoder but leaves {@code source} open.
+     */
+    public InputStream compress(InputStream source, String encoding) throws IOException {
+        return new CompressingInputStream(source, encoding, level);
+    }
+
+    public static InputStream decompress(InputStream in, String encoding) throws IOException {
+        switch (encoding) {
+            case GZIP:
+                return new GZIPInputStream(in, CHUNK_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            default:
+                throw new IOException("Unsupported content encoding: " + encoding);
+        }
+    }
+
+    /**
+     * Whether an Accept-Encoding header admits the given coding, honouring q=0 exclusions.
+     */
+    public static boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals(encoding) || (GZIP.equals(encoding) && coding.equals("x-gzip"))) {
+                return quality > 0;
+            }
+            if (coding.equals("*")) {
+                wildcard = quality > 0;
+            }
+        }
+        return wildcard;
+    }
+
+    private static OutputStream encoder(OutputStream out, String encoding, int level) throws IOException {
+        switch (encoding) {
+            case GZIP:
+                return new GZIPOutputStream(out, CHUNK_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case ZSTD:
+                return new ZstdOutputStream(out, level);
+            default:
+                throw new IOException("Unsupported content encoding: " + encoding);
+        }
+    }
+
+    private static final class CompressingInputStream extends InputStream {
+        private final InputStream source;
+        private final ChunkBuffer compressed = new ChunkBuffer();
+        private final OutputStream encoder;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int position;
+        private boolean finished;
+
+        private CompressingInputStream(InputStream source, String encoding, int level) throws IOException {
+            this.source = source;
+            this.encoder = encoder(compressed, encoding, level);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            // The encoder may swallow a whole chunk before emitting anything
+            while (position == compressed.size()) {
+                if (finished) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(len, compressed.size() - position);
+            System.arraycopy(compressed.array(), position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private void fill() throws IOException {
+            compressed.reset();
+            position = 0;
+            int read = source.read(chunk);
+            if (read == -1) {
+                encoder.close();
+                finished = true;
+            } else {
+                encoder.write(chunk, 0, read);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                finished = true;
+                encoder.close();
+            }
+        }
+    }
+
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        private ChunkBuffer() {
+            super(CHUNK_SIZE);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.filestorage.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local LRU cache of remote objects on disk, capped by total bytes. Fills are written
+ * to a temporary file and renamed into place, so readers never see a partial object, and
+ * concurrent misses for the same key share a single fetch.
+ */
+public class DiskCache {
+    private static final String TEMP_PREFIX = ".fill-";
+
+    public interface Loader {
+        Source load() throws IOException;
+    }
+
+    public static class Source {
+        private final InputStream inputStream;
+        private final long length;
+
+        public Source(InputStream inputStream, long length) {
+            this.inputStream = inputStream;
+            this.length = length;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxObjectSize;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<File>> fills = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes;
+
+    public DiskCache(File directory, long maxBytes, long maxObjectSize) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxObjectSize = Math.min(maxObjectSize, maxBytes);
+        Files.createDirectories(directory.toPath());
+        loadExisting();
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        String prefix = MetricRegistry.name(DiskCache.class);
+        metrics.register(MetricRegistry.name(prefix, "hits"), (Gauge<Long>) hits::get);
+        metrics.register(MetricRegistry.name(prefix, "misses"), (Gauge<Long>) misses::get);
+        metrics.register(MetricRegistry.name(prefix, "bytes"), (Gauge<Long>) this::getTotalBytes);
+        metrics.register(MetricRegistry.name(prefix, "entries"), (Gauge<Integer>) this::getEntryCount);
+    }
+
+    public Optional<File> get(String key) {
+        String name = fileName(key);
+        synchronized (this) {
+            // get() rather than containsKey() so the lookup refreshes the LRU position
+            if (entries.get(name) == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new File(directory, name));
+    }
+
+    public InputStream open(String key, Loader loader) throws IOException {
+        String name = fileName(key);
+        InputStream cached = openCached(name);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<File> fill = new CompletableFuture<>();
+        CompletableFuture<File> inFlight = fills.putIfAbsent(name, fill);
+        if (inFlight != null) {
+            return awaitFill(inFlight, loader);
+        }
+
+        File tempFile = null;
+        try {
+            Source source = loader.load();
+            if (source.length > maxObjectSize) {
+                fill.complete(null);
+                return source.inputStream;
+            }
+
+            tempFile = File.createTempFile(TEMP_PREFIX, ".tmp", directory);
+            try (InputStream in = source.inputStream; OutputStream out = new FileOutputStream(tempFile)) {
+                IOUtils.copyLarge(in, out);
+            }
+
+            File target = new File(directory, name);
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            InputStream result = FileUtils.openInputStream(target);
+            admit(name, target, fill);
+            fill.complete(target);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            fill.completeExceptionally(e);
+            if (tempFile != null) {
+                FileUtils.deleteQuietly(tempFile);
+            }
+            throw e;
+        } finally {
+            fills.remove(name, fill);
+        }
+    }
+
+    public void invalidate(String key) {
+        String name = fileName(key);
+        fills.remove(name);
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        FileUtils.deleteQuietly(new File(directory, name));
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private InputStream openCached(String name) {
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+        try {
+            return FileUtils.openInputStream(new File(directory, name));
+        } catch (IOException e) {
+            // Evicted between the lookup and the open
+            return null;
+        }
+    }
+
+    private InputStream awaitFill(CompletableFuture<File> inFlight, Loader loader) throws IOException {
+        File filled;
+        try {
+            filled = inFlight.join();
+        } catch (RuntimeException e) {
+            filled = null;
+        }
+
+        if (filled != null) {
+            try {
+                return FileUtils.openInputStream(filled);
+            } catch (FileNotFoundException e) {
+                // Evicted or invalidated already, fall through to a direct fetch
+            }
+        }
+        return loader.load().inputStream;
+    }
+
+    private void admit(String name, File target, CompletableFuture<File> fill) {
+        synchronized (this) {
+            // An invalidate() during the fill removed our marker; the filled content is stale
+            if (fills.get(name) != fill) {
+                FileUtils.deleteQuietly(target);
+                return;
+            }
+            Long previous = entries.put(name, target.length());
+            if (previous != null) {
+                totalBytes -= previous;
+            }
+            totalBytes += target.length();
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            FileUtils.deleteQuietly(new File(directory, entry.getKey()));
+        }
+    }
+
+    private void loadExisting() {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File file : files) {
+                if (file.getName().startsWith(TEMP_PREFIX)) {
+                    FileUtils.deleteQuietly(file);
+                    continue;
+                }
+                entries.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+            evict();
+        }
+    }
+
+    private static String fileName(String key) {
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+}
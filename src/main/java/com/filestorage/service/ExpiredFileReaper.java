@@ -0,0 +1,118 @@
+package com.filestorage.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.model.FileMetadata;
+import com.google.common.util.concurrent.RateLimiter;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically removes expired files. Expired rows are read in keyset-ordered chunks instead
+ * of one unbounded list; each chunk's storage is deleted first and only the rows whose bytes
+ * are really gone are deleted, so a storage failure never orphans an object. Shared blob
+ * references and quota are released only for the rows this node's delete claimed, so nodes
+ * reaping the same chunk, or a retry after a failed delete, cannot release them twice.
+ */
+public class ExpiredFileReaper implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpiredFileReaper.class);
+    private static final Date EPOCH = new Date(0);
+
+    private final FileMetadataDAO fileMetadataDAO;
+    private final FileStorageService fileStorageService;
+    private final FileStorageConfiguration.ReaperConfig reaperConfig;
+    private final ExecutorService deletePool;
+    private final RateLimiter rateLimiter;
+    private final Meter reaped;
+    private final Meter failed;
+    private final Timer batchTimer;
+    private ScheduledExecutorService scheduler;
+
+    public ExpiredFileReaper(FileMetadataDAO fileMetadataDAO, FileStorageService fileStorageService,
+                             FileStorageConfiguration.ReaperConfig reaperConfig, ExecutorService deletePool,
+                             MetricRegistry metrics) {
+        this.fileMetadataDAO = fileMetadataDAO;
+        this.fileStorageService = fileStorageService;
+        this.reaperConfig = reaperConfig;
+        this.deletePool = deletePool;
+        this.rateLimiter = RateLimiter.create(reaperConfig.getMaxFilesPerSecond());
+        this.reaped = metrics.meter(MetricRegistry.name(ExpiredFileReaper.class, "reaped"));
+        this.failed = metrics.meter(MetricRegistry.name(ExpiredFileReaper.class, "failed"));
+        this.batchTimer = metrics.timer(MetricRegistry.name(ExpiredFileReaper.class, "batch"));
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expired-file-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = reaperConfig.getInterval().toMilliseconds();
+        scheduler.scheduleWithFixedDelay(this::reapQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public long reap() throws InterruptedException {
+        Date now = new Date();
+        Date afterDate = EPOCH;
+        String afterId = "";
+        long total = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            List<FileMetadata> batch = fileMetadataDAO.findExpiredFilesAfter(now, afterDate, afterId, reaperConfig.getBatchSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            // Bursts of expirations are spread out instead of competing with foreground traffic
+            rateLimiter.acquire(batch.size());
+            try (Timer.Context ignored = batchTimer.time()) {
+                List<String> storageGone = fileStorageService.deleteFiles(batch, deletePool);
+                List<String> deletedIds = storageGone.isEmpty()
+                    ? List.of()
+                    : fileMetadataDAO.claimAndDeleteByIds(storageGone);
+                fileStorageService.releaseDeleted(batch, deletedIds);
+                reaped.mark(deletedIds.size());
+                // Rows another node claimed first are neither reaped here nor failed
+                failed.mark(batch.size() - storageGone.size());
+                total += deletedIds.size();
+            }
+
+            // Failed rows stay behind the cursor and are retried on the next run
+            FileMetadata last = batch.get(batch.size() - 1);
+            afterDate = last.getExpirationDate();
+            afterId = last.getId();
+        }
+        return total;
+    }
+
+    private void reapQuietly() {
+        try {
+            long total = reap();
+            if (total > 0) {
+                LOGGER.info("Reaped {} expired files", total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Expired file reaper run failed", e);
+        }
+    }
+}
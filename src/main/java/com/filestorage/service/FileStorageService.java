@@ -1,56 +1,59 @@
 package com.filestorage.service;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.client.builder.AwsClientBuilder;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
+import com.codahale.metrics.MetricRegistry;
 import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.BlobReferenceDAO;
+import com.filestorage.model.BlobReference;
 import com.filestorage.model.FileMetadata;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class FileStorageService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileStorageService.class);
     
-    private final FileStorageConfiguration.S3Config s3Config;
-    private final FileStorageConfiguration.LocalStorageConfig localStorageConfig;
-    private final AmazonS3 s3Client;
+    private final StorageBackendRegistry storageBackends;
+    private final PlacementPolicy placementPolicy;
+    private final FileStorageConfiguration.DeduplicationConfig deduplicationConfig;
+    private final BlobReferenceDAO blobReferenceDAO;
+    private final MimeTypeDetector mimeTypeDetector;
+    private final QuotaLedger quotaLedger;
+    private final CompressionPolicy compressionPolicy;
+    private final StorageMetrics storageMetrics;
     
-    public FileStorageService(FileStorageConfiguration.S3Config s3Config, 
-                             FileStorageConfiguration.LocalStorageConfig localStorageConfig) {
-        this.s3Config = s3Config;
-        this.localStorageConfig = localStorageConfig;
-        
-        if (s3Config.isEnabled()) {
-            BasicAWSCredentials credentials = new BasicAWSCredentials(
-                s3Config.getAccessKey(), 
-                s3Config.getSecretKey()
-            );
-            
-            AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
-                .withCredentials(new AWSStaticCredentialsProvider(credentials))
-                .withRegion(s3Config.getRegion());
-                
-            if (s3Config.getEndpoint() != null) {
-                builder.withEndpointConfiguration(
-                    new AwsClientBuilder.EndpointConfiguration(s3Config.getEndpoint(), s3Config.getRegion())
-                );
-            }
-            
-            this.s3Client = builder.build();
-        } else {
-            this.s3Client = null;
-        }
+    public FileStorageService(StorageBackendRegistry storageBackends,
+                             FileStorageConfiguration.PlacementConfig placementConfig,
+                             FileStorageConfiguration.FileUploadLimits uploadLimits,
+                             FileStorageConfiguration.DeduplicationConfig deduplicationConfig,
+                             BlobReferenceDAO blobReferenceDAO,
+                             QuotaLedger quotaLedger,
+                             FileStorageConfiguration.CompressionConfig compressionConfig) {
+        this.storageBackends = storageBackends;
+        this.placementPolicy = new PlacementPolicy(placementConfig, storageBackends);
+        this.deduplicationConfig = deduplicationConfig;
+        this.blobReferenceDAO = blobReferenceDAO;
+        this.quotaLedger = quotaLedger;
+        this.compressionPolicy = new CompressionPolicy(compressionConfig);
+        this.storageMetrics = new StorageMetrics(storageBackends.getNames());
+        this.mimeTypeDetector = new MimeTypeDetector(uploadLimits.getMimeSniffBytes(), uploadLimits.getAllowedMimeTypes());
     }
     
     public FileMetadata uploadFile(InputStream inputStream, String fileName, String uploadedBy) throws IOException {
@@ -64,114 +67,423 @@ public class FileStorageService {
         metadata.setUploadedBy(uploadedBy);
         metadata.setUploadDate(new Date());
         
-        // Determine storage location
-        String storageLocation;
-        if (s3Config.isEnabled() && s3Client != null) {
-            storageLocation = storeFileInS3(inputStream, storedName, metadata);
-        } else {
-            storageLocation = storeFileLocally(inputStream, storedName, metadata);
+        // Reject disallowed types before a single byte reaches the backend
+        MimeTypeDetector.Detection detection = mimeTypeDetector.detect(inputStream, fileName);
+        if (!mimeTypeDetector.isAllowed(detection.getMimeType())) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.MIME_TYPE_NOT_ALLOWED,
+                "File type " + detection.getMimeType() + " is not allowed");
+        }
+        metadata.setMimeType(detection.getMimeType());
+        
+        if (quotaLedger == null) {
+            return storeUpload(detection.getInputStream(), metadata, storedName);
+        }
+        
+        // Limits are enforced per read, so an oversized upload fails before its excess is written
+        QuotaLedger.LimitedStream limitedStream = quotaLedger.limit(detection.getInputStream(), uploadedBy);
+        try {
+            FileMetadata stored = storeUpload(limitedStream, metadata, storedName);
+            limitedStream.commit();
+            return stored;
+        } finally {
+            limitedStream.releaseInFlight();
+        }
+    }
+    
+    private FileMetadata storeUpload(InputStream inputStream, FileMetadata metadata, String storedName) throws IOException {
+        // Hash and count the stream while it is being written, before any compression
+        HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        CountingInputStream countingStream = new CountingInputStream(hashingStream);
+        
+        Optional<String> encoding = compressionPolicy.encodingFor(metadata.getMimeType());
+        if (encoding.isEmpty()) {
+            return storeStream(countingStream, countingStream, hashingStream, metadata, storedName);
+        }
+        
+        metadata.setContentEncoding(encoding.get());
+        try (InputStream compressedStream = compressionPolicy.compress(countingStream, encoding.get())) {
+            return storeStream(compressedStream, countingStream, hashingStream, metadata, storedName);
         }
+    }
+    
+    private FileMetadata storeStream(InputStream storedStream, CountingInputStream countingStream,
+                                     HashingInputStream hashingStream, FileMetadata metadata,
+                                     String storedName) throws IOException {
+        PlacementPolicy.Placement placement = placementPolicy.place(storedStream, metadata.getMimeType());
+        StorageBackend backend = placement.getBackend();
+        if (deduplicationConfig.isEnabled()) {
+            return storeDeduplicated(backend, placement.getInputStream(), countingStream, hashingStream, metadata);
+        }
+        
+        String storageLocation = store(backend, placement.getInputStream(),
+            in -> backend.store(in, metadata, storedName));
         
+        metadata.setStoredName(storedName);
         metadata.setStoragePath(storageLocation);
+        metadata.setFileSize(countingStream.getCount());
+        metadata.setChecksum(hashingStream.hash().toString());
         return metadata;
     }
     
-    public InputStream downloadFile(String storagePath) throws IOException {
-        return retrieveFile(storagePath);
+    private String store(StorageBackend backend, InputStream inputStream, StoreAction action) throws IOException {
+        CountingInputStream countingStream = new CountingInputStream(inputStream);
+        StorageMetrics.Sample sample = storageMetrics.start(backend.getName(), StorageMetrics.UPLOAD);
+        try {
+            return action.store(countingStream);
+        } finally {
+            sample.stop(countingStream.getCount());
+        }
     }
     
-    private String storeFileInS3(InputStream inputStream, String storedName, FileMetadata metadata) throws IOException {
-        ObjectMetadata objectMetadata = new ObjectMetadata();
-        objectMetadata.setContentType(metadata.getMimeType());
-        objectMetadata.setContentLength(metadata.getFileSize());
-        objectMetadata.setLastModified(new Date());
-        
-        if (metadata.getContentEncoding() != null) {
-            objectMetadata.setContentEncoding(metadata.getContentEncoding());
+    private interface StoreAction {
+        String store(InputStream inputStream) throws IOException;
+    }
+    
+    /**
+     * Takes over an object a client wrote straight to a backend, e.g. through a presigned PUT.
+     * Its type is sniffed from the first bytes and the uploader's quota charged. An object of a
+     * disallowed type or size is deleted. One rejected for quota is kept: a concurrent completion
+     * of the same object may have been charged first and own it now.
+     */
+    public FileMetadata adoptStoredFile(String fileId, String fileName, String uploadedBy,
+                                        String storedName, String storageLocation, long fileSize) throws IOException {
+        StorageBackend backend = storageBackends.forLocation(storageLocation);
+        String mimeType;
+        long sniffLength = Math.min(fileSize, mimeTypeDetector.getSniffBytes());
+        try (InputStream head = sniffLength > 0
+                ? backend.openRange(storageLocation, 0, sniffLength)
+                : InputStream.nullInputStream()) {
+            mimeType = mimeTypeDetector.detect(head, fileName).getMimeType();
         }
         
-        PutObjectRequest request = new PutObjectRequest(
-            s3Config.getBucketName(), 
-            storedName, 
-            inputStream, 
-            objectMetadata
-        );
-        
-        s3Client.putObject(request);
+        try {
+            if (!mimeTypeDetector.isAllowed(mimeType)) {
+                throw new UploadRejectedException(UploadRejectedException.Reason.MIME_TYPE_NOT_ALLOWED,
+                    "File type " + mimeType + " is not allowed");
+            }
+            if (quotaLedger != null) {
+                quotaLedger.charge(uploadedBy, fileSize);
+            }
+        } catch (UploadRejectedException e) {
+            if (e.getReason() != UploadRejectedException.Reason.QUOTA_EXCEEDED) {
+                deleteFile(storageLocation);
+            }
+            throw e;
+        }
         
-        return "s3://" + s3Config.getBucketName() + "/" + storedName;
+        FileMetadata metadata = new FileMetadata();
+        metadata.setId(fileId);
+        metadata.setFileName(fileName);
+        metadata.setUploadedBy(uploadedBy);
+        metadata.setUploadDate(new Date());
+        metadata.setMimeType(mimeType);
+        metadata.setStoredName(storedName);
+        metadata.setStoragePath(storageLocation);
+        metadata.setFileSize(fileSize);
+        return metadata;
+    }
+    
+    public String detectMimeTypeByName(String fileName) throws IOException {
+        return mimeTypeDetector.detectByName(fileName);
     }
     
-    private String storeFileLocally(InputStream inputStream, String storedName, FileMetadata metadata) throws IOException {
-        File storageDir = new File(localStorageConfig.getBasePath());
-        if (!storageDir.exists()) {
-            storageDir.mkdirs();
+    public boolean isMimeTypeAllowed(String mimeType) {
+        return mimeTypeDetector.isAllowed(mimeType);
+    }
+    
+    public void registerMetrics(MetricRegistry metrics) {
+        storageMetrics.registerMetrics(metrics);
+    }
+    
+    public Optional<FileMetadata> uploadExisting(String checksum, String fileName, String uploadedBy) throws IOException {
+        Optional<BlobReference> found = blobReferenceDAO.findByChecksum(checksum);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!mimeTypeDetector.isAllowed(found.get().getMimeType())) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.MIME_TYPE_NOT_ALLOWED,
+                "File type " + found.get().getMimeType() + " is not allowed");
+        }
+        if (quotaLedger != null) {
+            quotaLedger.charge(uploadedBy, found.get().getFileSize());
+        }
+        // The row can only vanish while it has no references, so once ours is counted it is stable
+        Optional<BlobReference> blob = blobReferenceDAO.incrementRefCount(checksum) > 0
+            ? blobReferenceDAO.findByChecksum(checksum)
+            : Optional.empty();
+        if (blob.isEmpty()) {
+            if (quotaLedger != null) {
+                quotaLedger.release(uploadedBy, found.get().getFileSize(), 1);
+            }
+            return Optional.empty();
         }
         
-        File targetFile = new File(storageDir, storedName);
+        FileMetadata metadata = new FileMetadata();
+        metadata.setId(UUID.randomUUID().toString());
+        metadata.setFileName(fileName);
+        metadata.setUploadedBy(uploadedBy);
+        metadata.setUploadDate(new Date());
+        metadata.setStoredName(checksum);
+        metadata.setStoragePath(blob.get().getStorageLocation());
+        metadata.setFileSize(blob.get().getFileSize());
+        metadata.setMimeType(blob.get().getMimeType());
+        metadata.setContentEncoding(blob.get().getContentEncoding());
+        metadata.setChecksum(checksum);
+        return Optional.of(metadata);
+    }
+    
+    private FileMetadata storeDeduplicated(StorageBackend backend, InputStream storedStream,
+                                           CountingInputStream countingStream, HashingInputStream hashingStream,
+                                           FileMetadata metadata) throws IOException {
+        String stagingLocation = store(backend, storedStream, in -> backend.stage(in, metadata));
+        
+        String checksum = hashingStream.hash().toString();
+        long fileSize = countingStream.getCount();
         
-        try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
-            IOUtils.copy(inputStream, outputStream);
+        // Each promoted copy gets its own name, so a blob deleted on one node can never take a
+        // copy another node has just promoted for the same content with it
+        String storageLocation;
+        if (blobReferenceDAO.incrementRefCount(checksum) > 0) {
+            deleteFile(stagingLocation);
+            storageLocation = sharedBlob(checksum, metadata);
+        } else {
+            String promoted = backend.promote(stagingLocation, checksum + "-" + metadata.getId());
+            BlobReference blob = new BlobReference(checksum, promoted, fileSize, metadata.getMimeType());
+            blob.setContentEncoding(metadata.getContentEncoding());
+            if (blobReferenceDAO.insertOrIncrement(blob) == 1) {
+                storageLocation = promoted;
+            } else {
+                // Another upload of the same content created the blob first
+                deleteFile(promoted);
+                storageLocation = sharedBlob(checksum, metadata);
+            }
         }
         
-        return "file://" + targetFile.getAbsolutePath();
+        metadata.setStoredName(checksum);
+        metadata.setStoragePath(storageLocation);
+        metadata.setFileSize(fileSize);
+        metadata.setChecksum(checksum);
+        return metadata;
+    }
+    
+    private String sharedBlob(String checksum, FileMetadata metadata) throws IOException {
+        // Our reference keeps the row in place
+        BlobReference blob = blobReferenceDAO.findByChecksum(checksum)
+            .orElseThrow(() -> new IOException("Blob reference vanished for checksum " + checksum));
+        // The shared bytes keep whatever encoding they were first stored with
+        metadata.setContentEncoding(blob.getContentEncoding());
+        return blob.getStorageLocation();
+    }
+    
+    public InputStream downloadFile(String storagePath) throws IOException {
+        return retrieveFile(storagePath);
+    }
+    
+    /**
+     * Opens the original bytes of a file, decoding them if they were compressed at rest.
+     */
+    public InputStream downloadDecoded(FileMetadata metadata) throws IOException {
+        InputStream stored = retrieveFile(metadata.getStoragePath());
+        if (metadata.getContentEncoding() == null) {
+            return stored;
+        }
+        try {
+            return CompressionPolicy.decompress(stored, metadata.getContentEncoding());
+        } catch (IOException e) {
+            stored.close();
+            throw e;
+        }
+    }
+    
+    public Optional<Path> resolveLocalPath(String storagePath) {
+        return storageBackends.find(storagePath).flatMap(backend -> backend.localPath(storagePath));
+    }
+    
+    /**
+     * Whether reading the location crosses the network rather than the local disk.
+     */
+    public boolean isRemote(String storagePath) {
+        return storageBackends.find(storagePath).map(StorageBackend::isRemote).orElse(false);
+    }
+    
+    public InputStream downloadFileRange(String storagePath, long start, long length) throws IOException {
+        StorageBackend backend = storageBackends.forLocation(storagePath);
+        return storageMetrics.open(backend.getName(), StorageMetrics.DOWNLOAD,
+            () -> backend.openRange(storagePath, start, length));
     }
     
     public InputStream retrieveFile(String storageLocation) throws IOException {
-        if (storageLocation.startsWith("s3://")) {
-            return retrieveFileFromS3(storageLocation);
-        } else if (storageLocation.startsWith("file://")) {
-            return retrieveFileLocally(storageLocation);
-        } else {
-            throw new IllegalArgumentException("Unsupported storage location: " + storageLocation);
+        StorageBackend backend = storageBackends.forLocation(storageLocation);
+        return storageMetrics.open(backend.getName(), StorageMetrics.DOWNLOAD, () -> backend.open(storageLocation));
+    }
+    
+    /**
+     * Releases the storage, blob reference and quota of one file. Call it once per row, after
+     * the caller has deleted the row (or never inserted it), so concurrent deletes of the same
+     * row cannot release a shared blob twice.
+     */
+    public void deleteFile(FileMetadata metadata) throws IOException {
+        deleteStoredFile(metadata);
+        releaseQuota(metadata);
+    }
+    
+    /**
+     * Gives back the quota charged for a file without touching its storage, e.g. when another
+     * request recorded the same object first.
+     */
+    public void releaseQuota(FileMetadata metadata) {
+        if (quotaLedger != null && metadata.getFileSize() != null) {
+            quotaLedger.release(metadata.getUploadedBy(), metadata.getFileSize(), 1);
+        }
+    }
+    
+    private void deleteStoredFile(FileMetadata metadata) throws IOException {
+        String checksum = metadata.getChecksum();
+        if (checksum == null) {
+            deleteFile(metadata.getStoragePath());
+            return;
         }
+        
+        Optional<BlobReference> blob = blobReferenceDAO.findByChecksum(checksum);
+        if (blob.isEmpty() || !blob.get().getStorageLocation().equals(metadata.getStoragePath())) {
+            deleteFile(metadata.getStoragePath());
+            return;
+        }
+        
+        // Shared blobs are only removed by the release that dropped their row
+        Optional<BlobReference> unreferenced = blobReferenceDAO.releaseReference(checksum);
+        if (unreferenced.isPresent()) {
+            deleteFile(unreferenced.get().getStorageLocation());
+        }
+    }
+    
+    /**
+     * Deletes the stored bytes of many files at once. Locations are grouped per backend and
+     * deleted in batches on the given pool, e.g. S3 multi-object DeleteObjects calls of up to
+     * 1000 keys and single local files. Deleting an unshared object twice is harmless, so this
+     * runs before the rows are claimed; shared blobs are left to {@link #releaseDeleted}.
+     * Returns the ids whose rows may now be deleted; the rest failed and should keep their metadata.
+     */
+    public List<String> deleteFiles(List<FileMetadata> files, ExecutorService deletePool) throws InterruptedException {
+        List<String> deletedIds = new ArrayList<>(files.size());
+        Map<StorageBackend, Map<String, List<String>>> idsByLocation = new LinkedHashMap<>();
+        
+        for (FileMetadata metadata : files) {
+            String storageLocation = metadata.getStoragePath();
+            if (isSharedBlob(metadata)) {
+                deletedIds.add(metadata.getId());
+                continue;
+            }
+            
+            Optional<StorageBackend> backend = storageBackends.find(storageLocation);
+            if (backend.isEmpty()) {
+                LOGGER.warn("No storage backend for {} of {}", storageLocation, metadata.getId());
+                continue;
+            }
+            idsByLocation.computeIfAbsent(backend.get(), k -> new LinkedHashMap<>())
+                .computeIfAbsent(storageLocation, k -> new ArrayList<>())
+                .add(metadata.getId());
+        }
+        
+        List<Future<List<String>>> batches = new ArrayList<>();
+        idsByLocation.forEach((backend, ids) -> {
+            List<String> locations = new ArrayList<>(ids.keySet());
+            int batchSize = Math.max(backend.getDeleteBatchSize(), 1);
+            for (int from = 0; from < locations.size(); from += batchSize) {
+                List<String> batch = locations.subList(from, Math.min(from + batchSize, locations.size()));
+                batches.add(deletePool.submit(() -> deleteBatch(backend, batch, ids)));
+            }
+        });
+        
+        for (Future<List<String>> batch : batches) {
+            try {
+                deletedIds.addAll(batch.get());
+            } catch (ExecutionException e) {
+                LOGGER.warn("Failed to delete stored files", e.getCause());
+            }
+        }
+        return deletedIds;
     }
     
-    private InputStream retrieveFileFromS3(String storageLocation) throws IOException {
-        String key = storageLocation.substring(("s3://" + s3Config.getBucketName() + "/").length());
-        S3Object object = s3Client.getObject(s3Config.getBucketName(), key);
-        return object.getObjectContent();
+    /**
+     * Releases the shared blob references and quota of the files whose rows the caller has
+     * just deleted. Pass only the ids this caller's delete removed, so that nodes reaping the
+     * same rows, or a retry after a failed delete, never release a row twice.
+     */
+    public void releaseDeleted(List<FileMetadata> files, List<String> deletedIds) {
+        Set<String> deleted = new HashSet<>(deletedIds);
+        for (FileMetadata metadata : files) {
+            if (deleted.contains(metadata.getId()) && isSharedBlob(metadata)) {
+                try {
+                    deleteStoredFile(metadata);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Failed to release blob for {}", metadata.getId(), e);
+                }
+            }
+        }
+        if (quotaLedger != null) {
+            releaseQuota(files, deleted);
+        }
     }
     
-    private InputStream retrieveFileLocally(String storageLocation) throws IOException {
-        String filePath = storageLocation.substring("file://".length());
-        File file = new File(filePath);
-        return FileUtils.openInputStream(file);
+    private static boolean isSharedBlob(FileMetadata metadata) {
+        return metadata.getChecksum() != null && metadata.getChecksum().equals(metadata.getStoredName());
     }
     
-    public void deleteFile(String storageLocation) throws IOException {
-        if (storageLocation.startsWith("s3://")) {
-            deleteFileFromS3(storageLocation);
-        } else if (storageLocation.startsWith("file://")) {
-            deleteFileLocally(storageLocation);
+    private List<String> deleteBatch(StorageBackend backend, List<String> locations,
+                                     Map<String, List<String>> idsByLocation) throws IOException {
+        Set<String> failed;
+        StorageMetrics.Sample sample = storageMetrics.start(backend.getName(), StorageMetrics.DELETE);
+        try {
+            failed = backend.deleteAll(locations);
+        } finally {
+            sample.stop(-1);
         }
+        
+        List<String> deletedIds = new ArrayList<>();
+        for (String location : locations) {
+            if (!failed.contains(location)) {
+                deletedIds.addAll(idsByLocation.get(location));
+            }
+        }
+        return deletedIds;
     }
     
-    private void deleteFileFromS3(String storageLocation) {
-        String key = storageLocation.substring(("s3://" + s3Config.getBucketName() + "/").length());
-        s3Client.deleteObject(s3Config.getBucketName(), key);
+    private void releaseQuota(List<FileMetadata> files, Set<String> deletedIds) {
+        // One ledger update per user rather than per file
+        Map<String, long[]> releasedByUser = new LinkedHashMap<>();
+        for (FileMetadata metadata : files) {
+            if (deletedIds.contains(metadata.getId()) && metadata.getFileSize() != null) {
+                long[] totals = releasedByUser.computeIfAbsent(metadata.getUploadedBy(), k -> new long[2]);
+                totals[0] += metadata.getFileSize();
+                totals[1]++;
+            }
+        }
+        releasedByUser.forEach((uploadedBy, totals) -> {
+            try {
+                quotaLedger.release(uploadedBy, totals[0], (int) totals[1]);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to release quota for {}", uploadedBy, e);
+            }
+        });
     }
     
-    private void deleteFileLocally(String storageLocation) throws IOException {
-        String filePath = storageLocation.substring("file://".length());
-        File file = new File(filePath);
-        if (file.exists()) {
-            FileUtils.forceDelete(file);
+    public void deleteFile(String storageLocation) throws IOException {
+        StorageBackend backend = storageBackends.forLocation(storageLocation);
+        StorageMetrics.Sample sample = storageMetrics.start(backend.getName(), StorageMetrics.DELETE);
+        try {
+            backend.delete(storageLocation);
+        } finally {
+            sample.stop(-1);
         }
     }
     
     public boolean fileExists(String storageLocation) {
         try {
-            if (storageLocation.startsWith("s3://")) {
-                String key = storageLocation.substring(("s3://" + s3Config.getBucketName() + "/").length());
-                return s3Client.doesObjectExist(s3Config.getBucketName(), key);
-            } else if (storageLocation.startsWith("file://")) {
-                String filePath = storageLocation.substring("file://".length());
-                return new File(filePath).exists();
-            }
+            Optional<StorageBackend> backend = storageBackends.find(storageLocation);
+            return backend.isPresent() && backend.get().exists(storageLocation);
         } catch (Exception e) {
             return false;
         }
-        return false;
     }
 }
\ No newline at end of file
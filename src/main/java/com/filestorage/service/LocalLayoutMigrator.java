@@ -0,0 +1,128 @@
+package com.filestorage.service;
+
+import com.filestorage.db.BlobReferenceDAO;
+import com.filestorage.db.FileMetadataDAO;
+import com.filestorage.model.BlobReference;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Moves files from the old flat layout into the sharded one while the service keeps running.
+ * Each file is first hard-linked into its sharded location, then the metadata rows are
+ * repointed, and the flat name is only unlinked after a grace period so requests that
+ * resolved the old location just before the switch can still open it.
+ */
+public class LocalLayoutMigrator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalLayoutMigrator.class);
+
+    private final LocalStorageLayout layout;
+    private final FileMetadataDAO fileMetadataDAO;
+    private final BlobReferenceDAO blobReferenceDAO;
+    private final int batchSize;
+    private final Duration gracePeriod;
+
+    public LocalLayoutMigrator(LocalStorageLayout layout, FileMetadataDAO fileMetadataDAO,
+                               BlobReferenceDAO blobReferenceDAO, int batchSize, Duration gracePeriod) {
+        this.layout = layout;
+        this.fileMetadataDAO = fileMetadataDAO;
+        this.blobReferenceDAO = blobReferenceDAO;
+        this.batchSize = Math.max(batchSize, 1);
+        this.gracePeriod = gracePeriod;
+    }
+
+    public long migrate() throws IOException, InterruptedException {
+        long migrated = migrateDirectory(layout.getBasePath(), false);
+        File blobDirectory = layout.flatBlobDirectory();
+        if (blobDirectory.isDirectory()) {
+            migrated += migrateDirectory(blobDirectory, true);
+        }
+        LOGGER.info("Migrated {} files into the sharded layout", migrated);
+        return migrated;
+    }
+
+    private long migrateDirectory(File directory, boolean blobs) throws IOException, InterruptedException {
+        long migrated = 0;
+        List<Path> pendingUnlinks = new ArrayList<>(batchSize);
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.toPath(), Files::isRegularFile)) {
+            for (Path source : entries) {
+                String storedName = source.getFileName().toString();
+                File target = blobs
+                    ? layout.resolveBlob(storedName)
+                    : layout.resolve(LocalStorageLayout.shardKeyOf(storedName), storedName);
+                if (target.toPath().equals(source)) {
+                    continue;
+                }
+
+                layout.ensureParent(target);
+                if (!target.exists()) {
+                    Files.createLink(target.toPath(), source);
+                } else if (!Files.isSameFile(target.toPath(), source)) {
+                    LOGGER.warn("Skipping {}: {} already exists with different content", source, target);
+                    continue;
+                }
+
+                String oldLocation = "file://" + source.toAbsolutePath();
+                String newLocation = "file://" + target.getAbsolutePath();
+                int repointed = fileMetadataDAO.updateStorageLocation(storedName, oldLocation, newLocation);
+                if (blobs) {
+                    repointed += blobReferenceDAO.updateStorageLocation(storedName, oldLocation, newLocation);
+                }
+                if (!safeToUnlink(storedName, newLocation, repointed, blobs)) {
+                    LOGGER.warn("Keeping {}: not every row for {} points at {}", source, storedName, newLocation);
+                    continue;
+                }
+
+                pendingUnlinks.add(source);
+                migrated++;
+                if (pendingUnlinks.size() >= batchSize) {
+                    unlinkAfterGracePeriod(pendingUnlinks);
+                }
+            }
+        }
+
+        unlinkAfterGracePeriod(pendingUnlinks);
+        return migrated;
+    }
+
+    /**
+     * The flat name may only go once some row points at the sharded copy and none points
+     * anywhere else, e.g. at a relative or symlinked spelling of the flat path.
+     */
+    private boolean safeToUnlink(String storedName, String newLocation, int repointed, boolean blobs) {
+        if (fileMetadataDAO.countByStoredNameElsewhere(storedName, newLocation) > 0) {
+            return false;
+        }
+        boolean referenced = repointed > 0 || !fileMetadataDAO.findIdsByStoredName(storedName).isEmpty();
+        if (blobs) {
+            Optional<BlobReference> blob = blobReferenceDAO.findByChecksum(storedName);
+            if (blob.isPresent() && !blob.get().getStorageLocation().equals(newLocation)) {
+                return false;
+            }
+            referenced |= blob.isPresent();
+        }
+        return referenced;
+    }
+
+    private void unlinkAfterGracePeriod(List<Path> pendingUnlinks) throws IOException, InterruptedException {
+        if (pendingUnlinks.isEmpty()) {
+            return;
+        }
+        Thread.sleep(gracePeriod.toMilliseconds());
+        for (Path source : pendingUnlinks) {
+            Files.deleteIfExists(source);
+        }
+        LOGGER.info("Unlinked {} flat files", pendingUnlinks.size());
+        pendingUnlinks.clear();
+    }
+}
@@ -0,0 +1,156 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * One file per stored object under the sharded {@link LocalStorageLayout}.
+ */
+public class LocalStorageBackend implements StorageBackend, ChunkedUploadTarget {
+    public static final String NAME = "local";
+    private static final String SCHEME = "file://";
+
+    private final LocalStorageLayout layout;
+
+    public LocalStorageBackend(FileStorageConfiguration.LocalStorageConfig localStorageConfig) {
+        this.layout = new LocalStorageLayout(localStorageConfig);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public String store(InputStream inputStream, FileMetadata metadata, String storedName) throws IOException {
+        return write(inputStream, layout.resolve(metadata.getId(), storedName));
+    }
+
+    @Override
+    public String stage(InputStream inputStream, FileMetadata metadata) throws IOException {
+        return write(inputStream, layout.resolveStaging(metadata.getId()));
+    }
+
+    private String write(InputStream inputStream, File targetFile) throws IOException {
+        layout.ensureParent(targetFile);
+
+        try (FileOutputStream outputStream = new FileOutputStream(targetFile)) {
+            IOUtils.copyLarge(inputStream, outputStream);
+        } catch (IOException e) {
+            // Don't leave a truncated file behind when the upload is cut off
+            Files.deleteIfExists(targetFile.toPath());
+            throw e;
+        }
+
+        return SCHEME + targetFile.getAbsolutePath();
+    }
+
+    @Override
+    public String beginChunked(String fileId, String storedName, long length) throws IOException {
+        File targetFile = layout.resolve(fileId, storedName);
+        layout.ensureParent(targetFile);
+        // Sized up front so chunks can be written at their offsets in any order
+        try (RandomAccessFile file = new RandomAccessFile(targetFile, "rw")) {
+            file.setLength(length);
+        }
+        return null;
+    }
+
+    @Override
+    public String writeChunk(String fileId, String storedName, String handle, int index, long offset,
+                             long length, InputStream inputStream) throws IOException {
+        File targetFile = layout.resolve(fileId, storedName);
+        try (FileChannel channel = FileChannel.open(targetFile.toPath(), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            long written = 0;
+            while (written < length) {
+                long transferred = channel.transferFrom(source, offset + written, length - written);
+                if (transferred == 0) {
+                    break;
+                }
+                written += transferred;
+            }
+            if (written != length) {
+                throw new IOException("Chunk " + index + " ended after " + written + " of " + length + " bytes");
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String completeChunked(String fileId, String storedName, String handle, Map<Integer, String> chunks) {
+        return SCHEME + layout.resolve(fileId, storedName).getAbsolutePath();
+    }
+
+    @Override
+    public void abortChunked(String fileId, String storedName, String handle) throws IOException {
+        Files.deleteIfExists(layout.resolve(fileId, storedName).toPath());
+    }
+
+    @Override
+    public String promote(String stagingLocation, String blobName) throws IOException {
+        File blobFile = layout.resolveBlob(blobName);
+        layout.ensureParent(blobFile);
+        Files.move(pathOf(stagingLocation), blobFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return SCHEME + blobFile.getAbsolutePath();
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        return FileUtils.openInputStream(pathOf(location).toFile());
+    }
+
+    @Override
+    public InputStream openRange(String location, long start, long length) throws IOException {
+        FileChannel channel = FileChannel.open(pathOf(location), StandardOpenOption.READ);
+        channel.position(start);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        File file = pathOf(location).toFile();
+        if (file.exists()) {
+            FileUtils.forceDelete(file);
+        }
+    }
+
+    @Override
+    public boolean exists(String location) {
+        return pathOf(location).toFile().exists();
+    }
+
+    @Override
+    public Optional<Path> localPath(String location) {
+        return Optional.of(pathOf(location));
+    }
+
+    private static Path pathOf(String location) {
+        return Paths.get(location.substring(SCHEME.length()));
+    }
+}
@@ -0,0 +1,84 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps stored objects onto a fan-out directory tree under the local base path, e.g.
+ * {@code basePath/3f/a2/3fa2...-..._report.pdf} for two levels of two hex characters.
+ * Directories are created on first use and remembered, so steady-state uploads do no
+ * exists()/mkdirs() calls.
+ */
+public class LocalStorageLayout {
+    private static final String BLOB_DIR = "blobs";
+    private static final String STAGING_DIR = ".staging";
+
+    private final File basePath;
+    private final int shardLevels;
+    private final int shardWidth;
+    private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+
+    public LocalStorageLayout(FileStorageConfiguration.LocalStorageConfig localStorageConfig) {
+        this.basePath = new File(localStorageConfig.getBasePath()).getAbsoluteFile();
+        this.shardLevels = Math.max(localStorageConfig.getShardLevels(), 0);
+        this.shardWidth = Math.max(localStorageConfig.getShardWidth(), 1);
+    }
+
+    public File getBasePath() {
+        return basePath;
+    }
+
+    public File resolve(String shardKey, String storedName) {
+        return new File(shardDirectory(basePath, shardKey), storedName);
+    }
+
+    public File resolveBlob(String blobName) {
+        return new File(shardDirectory(new File(basePath, BLOB_DIR), blobName), blobName);
+    }
+
+    public File resolveStaging(String name) {
+        return new File(new File(basePath, STAGING_DIR), name);
+    }
+
+    public File flatBlobDirectory() {
+        return new File(basePath, BLOB_DIR);
+    }
+
+    public void ensureParent(File file) throws IOException {
+        Path parent = file.getParentFile().toPath();
+        if (knownDirectories.contains(parent)) {
+            return;
+        }
+        Files.createDirectories(parent);
+        knownDirectories.add(parent);
+    }
+
+    /**
+     * Shard key for a stored name: the file id in front of the first underscore, or the
+     * whole name for content-addressed blobs.
+     */
+    public static String shardKeyOf(String storedName) {
+        int separator = storedName.indexOf('_');
+        return separator > 0 ? storedName.substring(0, separator) : storedName;
+    }
+
+    private File shardDirectory(File root, String shardKey) {
+        String hex = shardKey.replace("-", "").toLowerCase(Locale.ROOT);
+        File directory = root;
+        for (int level = 0; level < shardLevels; level++) {
+            int start = level * shardWidth;
+            if (hex.length() < start + shardWidth) {
+                break;
+            }
+            directory = new File(directory, hex.substring(start, start + shardWidth));
+        }
+        return directory;
+    }
+}
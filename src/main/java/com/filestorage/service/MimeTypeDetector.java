@@ -0,0 +1,80 @@
+package com.filestorage.service;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sniffs the MIME type of an upload from its first few KB. Only Tika's magic-byte and
+ * file-name rules are used, never a parser, and the sniffed bytes are replayed from a
+ * bounded mark/reset buffer so the body is read exactly once.
+ */
+public class MimeTypeDetector {
+    private final MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
+    private final int sniffBytes;
+    private final Set<String> allowedMimeTypes;
+
+    public MimeTypeDetector(int sniffBytes, List<String> allowedMimeTypes) {
+        this.sniffBytes = sniffBytes;
+        this.allowedMimeTypes = allowedMimeTypes.stream()
+            .map(type -> type.toLowerCase(Locale.ROOT))
+            .collect(Collectors.toSet());
+    }
+
+    public static class Detection {
+        private final InputStream inputStream;
+        private final String mimeType;
+
+        Detection(InputStream inputStream, String mimeType) {
+            this.inputStream = inputStream;
+            this.mimeType = mimeType;
+        }
+
+        // Still yields every byte of the upload; the sniffed head is replayed from the buffer
+        public InputStream getInputStream() { return inputStream; }
+
+        public String getMimeType() { return mimeType; }
+    }
+
+    public Detection detect(InputStream inputStream, String fileName) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, sniffBytes);
+        buffered.mark(sniffBytes);
+        byte[] head = new byte[sniffBytes];
+        int length = IOUtils.read(buffered, head);
+        buffered.reset();
+
+        Metadata metadata = new Metadata();
+        if (fileName != null) {
+            metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+        }
+        MediaType mediaType = mimeTypes.detect(new ByteArrayInputStream(head, 0, length), metadata);
+        return new Detection(buffered, mediaType.getBaseType().toString());
+    }
+
+    /**
+     * Guesses the type from the file name alone, for bytes that never pass through here.
+     */
+    public String detectByName(String fileName) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+        return mimeTypes.detect(null, metadata).getBaseType().toString();
+    }
+
+    public int getSniffBytes() {
+        return sniffBytes;
+    }
+
+    public boolean isAllowed(String mimeType) {
+        return allowedMimeTypes.isEmpty() || allowedMimeTypes.contains(mimeType.toLowerCase(Locale.ROOT));
+    }
+}
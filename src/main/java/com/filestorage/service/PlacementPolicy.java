@@ -0,0 +1,77 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the backend for each upload. MIME type rules win; otherwise uploads whose stored
+ * bytes fit within the small-object threshold go to the small-object backend and the rest
+ * to the default one. The size is unknown while streaming, so up to threshold + 1 bytes are
+ * read ahead to decide.
+ */
+public class PlacementPolicy {
+    private final StorageBackendRegistry registry;
+    private final StorageBackend defaultBackend;
+    private final StorageBackend smallObjectBackend;
+    private final int smallObjectThreshold;
+    private final Map<String, String> mimeTypeBackends;
+
+    public PlacementPolicy(FileStorageConfiguration.PlacementConfig config, StorageBackendRegistry registry) {
+        this.registry = registry;
+        this.defaultBackend = config.getDefaultBackend() != null
+            ? registry.get(config.getDefaultBackend())
+            : registry.getDefault();
+        this.smallObjectThreshold = Math.max(config.getSmallObjectThreshold(), 0);
+        this.smallObjectBackend = smallObjectThreshold > 0 ? registry.get(config.getSmallObjectBackend()) : null;
+        this.mimeTypeBackends = config.getMimeTypeBackends();
+        // Fail at startup rather than on the first matching upload
+        mimeTypeBackends.values().forEach(registry::get);
+    }
+
+    public Placement place(InputStream inputStream, String mimeType) throws IOException {
+        for (Map.Entry<String, String> rule : mimeTypeBackends.entrySet()) {
+            if (CompressionPolicy.matchesAny(mimeType, List.of(rule.getKey()))) {
+                return new Placement(registry.get(rule.getValue()), inputStream);
+            }
+        }
+        if (smallObjectBackend == null || smallObjectBackend == defaultBackend) {
+            return new Placement(defaultBackend, inputStream);
+        }
+
+        byte[] head = new byte[smallObjectThreshold + 1];
+        int read = IOUtils.read(inputStream, head);
+        if (read <= smallObjectThreshold) {
+            return new Placement(smallObjectBackend, new ByteArrayInputStream(head, 0, read));
+        }
+        return new Placement(defaultBackend,
+            new SequenceInputStream(new ByteArrayInputStream(head, 0, read), inputStream));
+    }
+
+    public static final class Placement {
+        private final StorageBackend backend;
+        private final InputStream inputStream;
+
+        private Placement(StorageBackend backend, InputStream inputStream) {
+            this.backend = backend;
+            this.inputStream = inputStream;
+        }
+
+        public StorageBackend getBackend() {
+            return backend;
+        }
+
+        /**
+         * The upload to store, including any bytes read ahead to place it.
+         */
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+    }
+}
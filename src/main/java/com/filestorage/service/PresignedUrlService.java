@@ -0,0 +1,197 @@
+package com.filestorage.service;
+
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.PresignedUrl;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues short-lived presigned S3 URLs so upload and download bodies go between the client
+ * and S3 directly. The uploader is signed into the PUT as object metadata, which lets the
+ * completion call check who wrote the object without keeping any pending-upload state.
+ * Uploads land under a staging prefix and are copied to their final key only once the
+ * completion has charged them; staged objects nobody completed are reaped after twice the
+ * upload TTL.
+ */
+public class PresignedUrlService implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PresignedUrlService.class);
+    private static final String UPLOADED_BY = "uploaded-by";
+    private static final String STAGING_PREFIX = "presigned/";
+
+    private final S3StorageBackend s3Backend;
+    private final FileStorageService fileStorageService;
+    private final QuotaLedger quotaLedger;
+    private final FileStorageConfiguration.PresignConfig config;
+    private final long maxFileSize;
+    private ScheduledExecutorService scheduler;
+
+    public PresignedUrlService(S3StorageBackend s3Backend, FileStorageService fileStorageService,
+                               QuotaLedger quotaLedger, FileStorageConfiguration.FileUploadLimits uploadLimits,
+                               FileStorageConfiguration.PresignConfig config) {
+        this.s3Backend = s3Backend;
+        this.fileStorageService = fileStorageService;
+        this.quotaLedger = quotaLedger;
+        this.config = config;
+        this.maxFileSize = uploadLimits.getMaxFileSize();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled() && s3Backend != null;
+    }
+
+    public boolean isRedirectEnabled() {
+        return isEnabled() && config.isRedirectDownloads();
+    }
+
+    public PresignedUrl presignUpload(String fileName, long fileSize, String uploadedBy) throws IOException {
+        if (fileSize <= 0) {
+            throw new IllegalArgumentException("fileSize must be positive");
+        }
+        // Rejected before any bytes are sent; the signed length keeps the PUT to what was checked here
+        if (fileSize > maxFileSize) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.FILE_TOO_LARGE,
+                "File exceeds the maximum size of " + maxFileSize + " bytes");
+        }
+        if (quotaLedger != null && !quotaLedger.fits(uploadedBy, fileSize)) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.QUOTA_EXCEEDED,
+                "Storage quota exceeded for " + uploadedBy);
+        }
+        String mimeType = fileStorageService.detectMimeTypeByName(fileName);
+        if (!fileStorageService.isMimeTypeAllowed(mimeType)) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.MIME_TYPE_NOT_ALLOWED,
+                "File type " + mimeType + " is not allowed");
+        }
+
+        String fileId = UUID.randomUUID().toString();
+        Date expiresAt = new Date(System.currentTimeMillis() + config.getUploadTtl().toMilliseconds());
+        Map<String, String> userMetadata = Map.of(UPLOADED_BY, uploadedBy);
+        String url = s3Backend.presignPut(stagingKey(fileId, fileName), mimeType, fileSize, userMetadata, expiresAt)
+            .toString();
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(Headers.CONTENT_TYPE, mimeType);
+        headers.put(Headers.CONTENT_LENGTH, String.valueOf(fileSize));
+        headers.put(Headers.S3_USER_METADATA_PREFIX + UPLOADED_BY, uploadedBy);
+        return new PresignedUrl(fileId, "PUT", url, headers, expiresAt);
+    }
+
+    /**
+     * Charges a finished presigned upload and copies it out of staging under a key of its own,
+     * returning its metadata for the caller to insert. Empty if no object was staged under that
+     * id and name by this uploader within the upload TTL. The staged object is left for
+     * {@link #discardStaged}, so a completion that fails later can be retried.
+     */
+    public Optional<FileMetadata> completeUpload(String fileId, String fileName, String uploadedBy) throws IOException {
+        String stagingKey = stagingKey(fileId, fileName);
+        Optional<ObjectMetadata> object = s3Backend.head(stagingKey);
+        if (object.isEmpty() || !uploadedBy.equals(object.get().getUserMetaDataOf(UPLOADED_BY))) {
+            return Optional.empty();
+        }
+        // Older objects may be reaped under us
+        long stagedMillis = System.currentTimeMillis() - object.get().getLastModified().getTime();
+        if (stagedMillis > config.getUploadTtl().toMilliseconds()) {
+            return Optional.empty();
+        }
+
+        FileMetadata metadata = fileStorageService.adoptStoredFile(fileId, fileName, uploadedBy, stagingKey,
+            s3Backend.locationOf(stagingKey), object.get().getContentLength());
+        // Each completion gets its own copy, so one that loses a race can delete it without touching the winner's
+        String storedName = UUID.randomUUID() + "_" + fileName;
+        try {
+            metadata.setStoragePath(s3Backend.copy(stagingKey, storedName));
+        } catch (RuntimeException e) {
+            fileStorageService.releaseQuota(metadata);
+            throw e;
+        }
+        metadata.setStoredName(storedName);
+        return Optional.of(metadata);
+    }
+
+    /**
+     * Deletes the staged object of a recorded upload. A failure is only logged, the reaper
+     * removes it later.
+     */
+    public void discardStaged(String fileId, String fileName) {
+        String location = s3Backend.locationOf(stagingKey(fileId, fileName));
+        try {
+            s3Backend.delete(location);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not delete staged upload {}", location, e);
+        }
+    }
+
+    /**
+     * A GET URL for files whose stored bytes S3 can serve as they are. Files compressed at
+     * rest are excluded, since S3 cannot decode them for clients that don't accept the encoding.
+     */
+    public Optional<PresignedUrl> presignDownload(FileMetadata metadata) {
+        if (!isEnabled() || metadata.getContentEncoding() != null || !s3Backend.owns(metadata.getStoragePath())) {
+            return Optional.empty();
+        }
+        Date expiresAt = new Date(System.currentTimeMillis() + config.getDownloadTtl().toMilliseconds());
+        String disposition = "attachment; filename=\"" + metadata.getFileName() + "\"";
+        String url = s3Backend.presignGet(metadata.getStoragePath(), metadata.getMimeType(), disposition, expiresAt).toString();
+        return Optional.of(new PresignedUrl(metadata.getId(), "GET", url, null, expiresAt));
+    }
+
+    @Override
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "presigned-upload-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = config.getReapInterval().toMilliseconds();
+        scheduler.scheduleWithFixedDelay(this::reapQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void reapQuietly() {
+        try {
+            // Twice the TTL, so a completion that found its object fresh finishes before the object goes
+            Date cutoff = new Date(System.currentTimeMillis() - 2 * config.getUploadTtl().toMilliseconds());
+            List<String> stale = s3Backend.listModifiedBefore(STAGING_PREFIX, cutoff);
+            int batchSize = s3Backend.getDeleteBatchSize();
+            for (int from = 0; from < stale.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+                List<String> batch = stale.subList(from, Math.min(from + batchSize, stale.size()));
+                for (String location : s3Backend.deleteAll(batch)) {
+                    LOGGER.warn("Could not delete staged upload {}", location);
+                }
+            }
+            if (!stale.isEmpty()) {
+                LOGGER.info("Reaped {} staged presigned uploads", stale.size());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Presigned upload reaping failed", e);
+        }
+    }
+
+    private static String stagingKey(String fileId, String fileName) {
+        return STAGING_PREFIX + fileId + "_" + fileName;
+    }
+}
@@ -0,0 +1,172 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.UserQuotaDAO;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user storage usage backed by the user_quota table. Committed usage is cached per
+ * principal and bytes of uploads still in progress are counted in memory, so enforcing
+ * the upload limits costs a map lookup per read instead of a SUM over the user's rows.
+ */
+public class QuotaLedger {
+    private final UserQuotaDAO userQuotaDAO;
+    private final long maxFileSize;
+    private final long maxTotalSize;
+    // Expiring entries picks up usage changed by other nodes
+    private final LoadingCache<String, AtomicLong> committed;
+    private final ConcurrentHashMap<String, Long> inFlight = new ConcurrentHashMap<>();
+
+    public QuotaLedger(UserQuotaDAO userQuotaDAO, FileStorageConfiguration.FileUploadLimits uploadLimits) {
+        this.userQuotaDAO = userQuotaDAO;
+        this.maxFileSize = uploadLimits.getMaxFileSize();
+        this.maxTotalSize = uploadLimits.getMaxTotalSize();
+        this.committed = CacheBuilder.newBuilder()
+            .expireAfterWrite(uploadLimits.getQuotaCacheTtl().toMilliseconds(), TimeUnit.MILLISECONDS)
+            .build(new CacheLoader<String, AtomicLong>() {
+                @Override
+                public AtomicLong load(String uploadedBy) {
+                    return new AtomicLong(userQuotaDAO.findUsedBytes(uploadedBy).orElse(0L));
+                }
+            });
+    }
+
+    public long getUsedBytes(String uploadedBy) {
+        return committed.getUnchecked(uploadedBy).get() + inFlight.getOrDefault(uploadedBy, 0L);
+    }
+
+    /**
+     * Whether a file of the given size would currently fit, without reserving anything.
+     */
+    public boolean fits(String uploadedBy, long bytes) {
+        return getUsedBytes(uploadedBy) + bytes <= maxTotalSize;
+    }
+
+    /**
+     * Wraps an upload so that the read crossing maxFileSize or the user's remaining quota
+     * fails, before the offending bytes are handed to the storage backend.
+     */
+    public LimitedStream limit(InputStream inputStream, String uploadedBy) throws UploadRejectedException {
+        if (getUsedBytes(uploadedBy) >= maxTotalSize) {
+            throw quotaExceeded(uploadedBy);
+        }
+        return new LimitedStream(inputStream, uploadedBy);
+    }
+
+    /**
+     * Charges a file whose size is already known, such as a deduplicated upload by checksum.
+     */
+    public void charge(String uploadedBy, long bytes) throws UploadRejectedException {
+        if (bytes > maxFileSize) {
+            throw fileTooLarge();
+        }
+        if (getUsedBytes(uploadedBy) + bytes > maxTotalSize) {
+            throw quotaExceeded(uploadedBy);
+        }
+        adjust(uploadedBy, bytes, 1);
+    }
+
+    public void release(String uploadedBy, long bytes, int files) {
+        adjust(uploadedBy, -bytes, -files);
+    }
+
+    private void adjust(String uploadedBy, long bytes, int files) {
+        userQuotaDAO.adjust(uploadedBy, bytes, files);
+        AtomicLong cached = committed.getIfPresent(uploadedBy);
+        if (cached != null) {
+            cached.addAndGet(bytes);
+        }
+    }
+
+    private UploadRejectedException fileTooLarge() {
+        return new UploadRejectedException(UploadRejectedException.Reason.FILE_TOO_LARGE,
+            "File exceeds the maximum size of " + maxFileSize + " bytes");
+    }
+
+    private UploadRejectedException quotaExceeded(String uploadedBy) {
+        return new UploadRejectedException(UploadRejectedException.Reason.QUOTA_EXCEEDED,
+            "Storage quota of " + maxTotalSize + " bytes exceeded for " + uploadedBy);
+    }
+
+    public final class LimitedStream extends FilterInputStream {
+        private final String uploadedBy;
+        private long count;
+        private long reserved;
+
+        private LimitedStream(InputStream in, String uploadedBy) {
+            super(in);
+            this.uploadedBy = uploadedBy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            count(result);
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private void count(long bytes) throws UploadRejectedException {
+            count += bytes;
+            reserved += bytes;
+            long streaming = inFlight.merge(uploadedBy, bytes, Long::sum);
+            if (count > maxFileSize) {
+                throw fileTooLarge();
+            }
+            if (committed.getUnchecked(uploadedBy).get() + streaming > maxTotalSize) {
+                throw quotaExceeded(uploadedBy);
+            }
+        }
+
+        /**
+         * Records the completed upload in the ledger. Call before {@link #releaseInFlight()}
+         * so the bytes are never missing from the user's usage in between.
+         */
+        public void commit() {
+            adjust(uploadedBy, count, 1);
+        }
+
+        public void releaseInFlight() {
+            if (reserved > 0) {
+                long bytes = reserved;
+                reserved = 0;
+                inFlight.merge(uploadedBy, -bytes, (current, delta) -> current + delta == 0 ? null : current + delta);
+            }
+        }
+    }
+}
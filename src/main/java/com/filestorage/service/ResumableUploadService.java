@@ -0,0 +1,261 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.UploadSessionDAO;
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.UploadChunk;
+import com.filestorage.model.UploadSession;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable uploads in the style of tus.io. A session fixes the upload length and chunk
+ * size up front, so every chunk has a known offset and can be sent, retried or resumed
+ * independently and in parallel. On S3 each chunk is a multipart part, on local disk a
+ * positional write into a preallocated file. Sessions and received chunks are stored in
+ * the database, so an upload can continue on another node or after a restart.
+ */
+public class ResumableUploadService implements Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumableUploadService.class);
+    public static final String OPEN = "OPEN";
+    public static final String COMPLETING = "COMPLETING";
+    // S3 allows at most 10000 parts per multipart upload
+    private static final int MAX_CHUNKS = 10000;
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    private final UploadSessionDAO uploadSessionDAO;
+    private final FileStorageService fileStorageService;
+    private final StorageBackendRegistry storageBackends;
+    private final QuotaLedger quotaLedger;
+    private final FileStorageConfiguration.ResumableUploadConfig config;
+    private final long maxFileSize;
+    private final String backendName;
+    private ScheduledExecutorService scheduler;
+
+    public ResumableUploadService(UploadSessionDAO uploadSessionDAO, FileStorageService fileStorageService,
+                                  StorageBackendRegistry storageBackends, QuotaLedger quotaLedger,
+                                  FileStorageConfiguration.FileUploadLimits uploadLimits,
+                                  FileStorageConfiguration.ResumableUploadConfig config) {
+        this.uploadSessionDAO = uploadSessionDAO;
+        this.fileStorageService = fileStorageService;
+        this.storageBackends = storageBackends;
+        this.quotaLedger = quotaLedger;
+        this.config = config;
+        this.maxFileSize = uploadLimits.getMaxFileSize();
+
+        StorageBackend backend = config.getBackend() != null
+            ? storageBackends.get(config.getBackend())
+            : storageBackends.getDefault();
+        if (!(backend instanceof ChunkedUploadTarget)) {
+            throw new IllegalArgumentException("Storage backend " + backend.getName() + " does not support chunked uploads");
+        }
+        this.backendName = backend.getName();
+    }
+
+    public UploadSession create(String fileName, long uploadLength, String uploadedBy) throws IOException {
+        if (uploadLength <= 0) {
+            throw new IllegalArgumentException("Upload-Length must be positive");
+        }
+        // Rejected before any bytes are sent; the final charge happens on completion
+        if (uploadLength > maxFileSize) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.FILE_TOO_LARGE,
+                "File exceeds the maximum size of " + maxFileSize + " bytes");
+        }
+        if (quotaLedger != null && !quotaLedger.fits(uploadedBy, uploadLength)) {
+            throw new UploadRejectedException(UploadRejectedException.Reason.QUOTA_EXCEEDED,
+                "Storage quota exceeded for " + uploadedBy);
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUploadedBy(uploadedBy);
+        session.setFileName(fileName);
+        session.setUploadLength(uploadLength);
+        session.setChunkSize(chunkSizeFor(uploadLength));
+        session.setBackend(backendName);
+        session.setStatus(OPEN);
+        session.setExpiresDate(new Date(System.currentTimeMillis() + config.getSessionTtl().toMilliseconds()));
+        session.setUploadHandle(target(session).beginChunked(session.getId(), storedName(session), uploadLength));
+        try {
+            uploadSessionDAO.insert(session);
+        } catch (RuntimeException e) {
+            target(session).abortChunked(session.getId(), storedName(session), session.getUploadHandle());
+            throw e;
+        }
+        session.setReceivedChunks(List.of());
+        return session;
+    }
+
+    private int chunkSizeFor(long uploadLength) {
+        long minimum = Math.max(config.getChunkSize(), S3MultipartUploader.MIN_PART_SIZE);
+        long needed = (uploadLength + MAX_CHUNKS - 1) / MAX_CHUNKS;
+        return (int) Math.max(minimum, needed);
+    }
+
+    /**
+     * The session with its progress, if it exists and belongs to the caller.
+     */
+    public Optional<UploadSession> find(String sessionId, String uploadedBy) {
+        Optional<UploadSession> session = uploadSessionDAO.findById(sessionId)
+            .filter(found -> found.getUploadedBy().equals(uploadedBy));
+        session.ifPresent(found -> withProgress(found, uploadSessionDAO.findChunks(sessionId)));
+        return session;
+    }
+
+    /**
+     * Stores the chunk starting at {@code offset}, which must fall on a chunk boundary.
+     * Re-sending a chunk overwrites it.
+     */
+    public UploadSession writeChunk(UploadSession session, long offset, InputStream inputStream) throws IOException {
+        if (!OPEN.equals(session.getStatus())) {
+            throw new IllegalStateException("Upload " + session.getId() + " is already being completed");
+        }
+        if (offset < 0 || offset >= session.getUploadLength() || offset % session.getChunkSize() != 0) {
+            throw new IllegalArgumentException("Upload-Offset must be a multiple of " + session.getChunkSize()
+                + " below " + session.getUploadLength());
+        }
+
+        int index = (int) (offset / session.getChunkSize());
+        long length = session.chunkLength(index);
+        String token = target(session).writeChunk(session.getId(), storedName(session), session.getUploadHandle(),
+            index, offset, length, new BoundedInputStream(inputStream, length));
+        uploadSessionDAO.upsertChunk(new UploadChunk(session.getId(), index, length, token));
+        return withProgress(session, uploadSessionDAO.findChunks(session.getId()));
+    }
+
+    /**
+     * Assembles the chunks and returns the metadata of the finished file, for the caller to
+     * insert. The session is gone afterwards, unless assembling failed and it can be retried.
+     */
+    public FileMetadata complete(UploadSession session) throws IOException {
+        List<UploadChunk> chunks = uploadSessionDAO.findChunks(session.getId());
+        if (chunks.size() != session.getChunkCount()) {
+            throw new IllegalStateException(chunks.size() + " of " + session.getChunkCount() + " chunks received");
+        }
+        if (uploadSessionDAO.updateStatus(session.getId(), OPEN, COMPLETING) == 0) {
+            throw new IllegalStateException("Upload " + session.getId() + " is already being completed");
+        }
+
+        Map<Integer, String> tokens = new LinkedHashMap<>();
+        for (UploadChunk chunk : chunks) {
+            tokens.put(chunk.getChunkIndex(), chunk.getEtag());
+        }
+        String location;
+        try {
+            location = target(session).completeChunked(session.getId(), storedName(session),
+                session.getUploadHandle(), tokens);
+        } catch (IOException | RuntimeException e) {
+            uploadSessionDAO.updateStatus(session.getId(), COMPLETING, OPEN);
+            throw e;
+        }
+
+        // From here the object exists and the chunks are gone, so any failure deletes the object with the session
+        try {
+            return fileStorageService.adoptStoredFile(session.getId(), session.getFileName(), session.getUploadedBy(),
+                storedName(session), location, session.getUploadLength());
+        } catch (IOException | RuntimeException e) {
+            try {
+                fileStorageService.deleteFile(location);
+            } catch (IOException | RuntimeException deleteFailure) {
+                e.addSuppressed(deleteFailure);
+            }
+            throw e;
+        } finally {
+            uploadSessionDAO.deleteById(session.getId());
+        }
+    }
+
+    public void abort(UploadSession session) throws IOException {
+        if (uploadSessionDAO.updateStatus(session.getId(), OPEN, COMPLETING) == 0) {
+            throw new IllegalStateException("Upload " + session.getId() + " is already being completed");
+        }
+        target(session).abortChunked(session.getId(), storedName(session), session.getUploadHandle());
+        uploadSessionDAO.deleteById(session.getId());
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = config.getExpiryInterval().toMilliseconds();
+        scheduler.scheduleWithFixedDelay(this::expireQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private void expireQuietly() {
+        try {
+            List<UploadSession> expired;
+            do {
+                expired = uploadSessionDAO.findExpired(OPEN, new Date(), EXPIRY_BATCH_SIZE);
+                for (UploadSession session : expired) {
+                    expire(session);
+                }
+                if (!expired.isEmpty()) {
+                    LOGGER.info("Expired {} abandoned upload sessions", expired.size());
+                }
+            } while (expired.size() == EXPIRY_BATCH_SIZE && !Thread.currentThread().isInterrupted());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Upload session expiry failed", e);
+        }
+    }
+
+    private void expire(UploadSession session) throws IOException {
+        // Claimed like abort(), so a completion in progress here or on another node is left alone
+        if (uploadSessionDAO.updateStatus(session.getId(), OPEN, COMPLETING) == 0) {
+            return;
+        }
+        try {
+            target(session).abortChunked(session.getId(), storedName(session), session.getUploadHandle());
+        } catch (IOException | RuntimeException e) {
+            uploadSessionDAO.updateStatus(session.getId(), COMPLETING, OPEN);
+            throw e;
+        }
+        uploadSessionDAO.deleteById(session.getId());
+    }
+
+    private static UploadSession withProgress(UploadSession session, List<UploadChunk> chunks) {
+        // Upload-Offset counts the contiguous prefix, the chunk list shows what else has arrived
+        List<Integer> received = new ArrayList<>(chunks.size());
+        long offset = 0;
+        for (UploadChunk chunk : chunks) {
+            received.add(chunk.getChunkIndex());
+            if (offset == (long) chunk.getChunkIndex() * session.getChunkSize()) {
+                offset += chunk.getChunkLength();
+            }
+        }
+        session.setUploadOffset(offset);
+        session.setReceivedChunks(received);
+        return session;
+    }
+
+    private ChunkedUploadTarget target(UploadSession session) {
+        return (ChunkedUploadTarget) storageBackends.get(session.getBackend());
+    }
+
+    private static String storedName(UploadSession session) {
+        return session.getId() + "_" + session.getFileName();
+    }
+}
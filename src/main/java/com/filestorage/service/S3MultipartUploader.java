@@ -0,0 +1,133 @@
+package com.filestorage.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams an object of unknown length to S3 by cutting it into fixed-size parts and
+ * uploading up to {@code concurrency} parts at once. Part buffers are recycled, so the
+ * heap used by one upload is bounded by partSize x concurrency rather than the file size.
+ */
+public class S3MultipartUploader {
+    // S3 rejects non-final parts smaller than 5MB
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final ExecutorService executor;
+    private final int partSize;
+    private final int concurrency;
+
+    public S3MultipartUploader(AmazonS3 s3Client, ExecutorService executor, int partSize, int concurrency) {
+        this.s3Client = s3Client;
+        this.executor = executor;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        this.concurrency = Math.max(concurrency, 1);
+    }
+
+    public void upload(String bucketName, String key, InputStream inputStream, ObjectMetadata objectMetadata) throws IOException {
+        byte[] firstPart = new byte[partSize];
+        int firstLength = IOUtils.read(inputStream, firstPart);
+
+        // Objects that fit in a single part skip the multipart handshake
+        if (firstLength < partSize) {
+            objectMetadata.setContentLength(firstLength);
+            s3Client.putObject(new PutObjectRequest(bucketName, key,
+                new ByteArrayInputStream(firstPart, 0, firstLength), objectMetadata));
+            return;
+        }
+
+        String uploadId = s3Client.initiateMultipartUpload(
+            new InitiateMultipartUploadRequest(bucketName, key, objectMetadata)).getUploadId();
+
+        BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<PartETag>> parts = new ArrayList<>();
+        int allocatedBuffers = 1;
+
+        try {
+            byte[] buffer = firstPart;
+            int length = firstLength;
+            int partNumber = 1;
+
+            while (length > 0) {
+                parts.add(submitPart(bucketName, key, uploadId, partNumber++, buffer, length, freeBuffers, failure));
+
+                buffer = freeBuffers.poll();
+                if (buffer == null && allocatedBuffers < concurrency) {
+                    buffer = new byte[partSize];
+                    allocatedBuffers++;
+                } else if (buffer == null) {
+                    buffer = freeBuffers.take();
+                }
+
+                if (failure.get() != null) {
+                    throw failure.get();
+                }
+                length = IOUtils.read(inputStream, buffer);
+            }
+
+            List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+
+            s3Client.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        } catch (Exception e) {
+            for (Future<PartETag> part : parts) {
+                part.cancel(true);
+            }
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Multipart upload failed for " + key, cause);
+        }
+    }
+
+    private Future<PartETag> submitPart(String bucketName, String key, String uploadId, int partNumber,
+                                        byte[] buffer, int length, BlockingQueue<byte[]> freeBuffers,
+                                        AtomicReference<Exception> failure) {
+        return executor.submit(() -> {
+            try {
+                UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                    .withPartSize(length);
+                return s3Client.uploadPart(request).getPartETag();
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                freeBuffers.offer(buffer);
+            }
+        });
+    }
+}
@@ -0,0 +1,316 @@
+package com.filestorage.service;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.model.FileMetadata;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Objects in one S3 bucket, written with streaming multipart uploads and optionally read
+ * through the local {@link DiskCache}.
+ */
+public class S3StorageBackend implements StorageBackend, ChunkedUploadTarget {
+    public static final String NAME = "s3";
+    // S3 accepts at most 1000 keys per DeleteObjects request
+    private static final int MAX_DELETE_OBJECTS_KEYS = 1000;
+
+    private final String bucketName;
+    private final String scheme;
+    private final AmazonS3 s3Client;
+    private final S3MultipartUploader multipartUploader;
+    private final DiskCache diskCache;
+
+    public S3StorageBackend(FileStorageConfiguration.S3Config s3Config, ExecutorService transferExecutor,
+                            DiskCache diskCache) {
+        this.bucketName = s3Config.getBucketName();
+        this.scheme = "s3://" + bucketName + "/";
+        this.diskCache = diskCache;
+
+        BasicAWSCredentials credentials = new BasicAWSCredentials(
+            s3Config.getAccessKey(),
+            s3Config.getSecretKey()
+        );
+
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+            .withCredentials(new AWSStaticCredentialsProvider(credentials))
+            .withRegion(s3Config.getRegion());
+
+        if (s3Config.getEndpoint() != null) {
+            builder.withEndpointConfiguration(
+                new AwsClientBuilder.EndpointConfiguration(s3Config.getEndpoint(), s3Config.getRegion())
+            );
+        }
+
+        this.s3Client = builder.build();
+        this.multipartUploader = new S3MultipartUploader(
+            s3Client,
+            transferExecutor,
+            s3Config.getMultipartPartSize(),
+            s3Config.getMultipartConcurrency()
+        );
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getScheme() {
+        return scheme;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public String store(InputStream inputStream, FileMetadata metadata, String storedName) throws IOException {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentType(metadata.getMimeType());
+        objectMetadata.setLastModified(new Date());
+
+        if (metadata.getContentEncoding() != null) {
+            objectMetadata.setContentEncoding(metadata.getContentEncoding());
+        }
+
+        // The length is unknown until the stream ends, so parts are cut and uploaded as they arrive
+        multipartUploader.upload(bucketName, storedName, inputStream, objectMetadata);
+        return scheme + storedName;
+    }
+
+    @Override
+    public String stage(InputStream inputStream, FileMetadata metadata) throws IOException {
+        return store(inputStream, metadata, "staging/" + metadata.getId());
+    }
+
+    @Override
+    public String promote(String stagingLocation, String blobName) {
+        String stagingKey = keyOf(stagingLocation);
+        String blobKey = "blobs/" + blobName;
+        s3Client.copyObject(bucketName, stagingKey, bucketName, blobKey);
+        s3Client.deleteObject(bucketName, stagingKey);
+        return scheme + blobKey;
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        String key = keyOf(location);
+        if (diskCache == null) {
+            return s3Client.getObject(bucketName, key).getObjectContent();
+        }
+
+        return diskCache.open(location, () -> {
+            S3Object object = s3Client.getObject(bucketName, key);
+            return new DiskCache.Source(object.getObjectContent(), object.getObjectMetadata().getContentLength());
+        });
+    }
+
+    @Override
+    public InputStream openRange(String location, long start, long length) throws IOException {
+        Optional<File> cached = diskCache != null ? diskCache.get(location) : Optional.empty();
+        if (cached.isPresent()) {
+            try {
+                FileChannel channel = FileChannel.open(cached.get().toPath(), StandardOpenOption.READ);
+                channel.position(start);
+                return new BoundedInputStream(Channels.newInputStream(channel), length);
+            } catch (IOException e) {
+                // Evicted since the lookup, fall back to a ranged GET
+            }
+        }
+
+        GetObjectRequest request = new GetObjectRequest(bucketName, keyOf(location))
+            .withRange(start, start + length - 1);
+        return s3Client.getObject(request).getObjectContent();
+    }
+
+    @Override
+    public void delete(String location) {
+        s3Client.deleteObject(bucketName, keyOf(location));
+        if (diskCache != null) {
+            diskCache.invalidate(location);
+        }
+    }
+
+    @Override
+    public int getDeleteBatchSize() {
+        return MAX_DELETE_OBJECTS_KEYS;
+    }
+
+    @Override
+    public Set<String> deleteAll(List<String> locations) {
+        List<DeleteObjectsRequest.KeyVersion> keyVersions = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            keyVersions.add(new DeleteObjectsRequest.KeyVersion(keyOf(location)));
+        }
+
+        Set<String> failed = new HashSet<>();
+        try {
+            s3Client.deleteObjects(new DeleteObjectsRequest(bucketName)
+                .withKeys(keyVersions)
+                .withQuiet(true));
+        } catch (MultiObjectDeleteException e) {
+            for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                failed.add(scheme + error.getKey());
+            }
+        } finally {
+            if (diskCache != null) {
+                for (String location : locations) {
+                    diskCache.invalidate(location);
+                }
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public boolean exists(String location) {
+        return s3Client.doesObjectExist(bucketName, keyOf(location));
+    }
+
+    @Override
+    public String beginChunked(String fileId, String storedName, long length) {
+        return s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, storedName))
+            .getUploadId();
+    }
+
+    @Override
+    public String writeChunk(String fileId, String storedName, String handle, int index, long offset,
+                             long length, InputStream inputStream) {
+        // Chunks map one to one onto parts, which S3 numbers from 1
+        UploadPartRequest request = new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(storedName)
+            .withUploadId(handle)
+            .withPartNumber(index + 1)
+            .withInputStream(inputStream)
+            .withPartSize(length);
+        return s3Client.uploadPart(request).getETag();
+    }
+
+    @Override
+    public String completeChunked(String fileId, String storedName, String handle, Map<Integer, String> chunks) {
+        List<PartETag> partETags = new ArrayList<>(chunks.size());
+        chunks.forEach((index, etag) -> partETags.add(new PartETag(index + 1, etag)));
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, storedName, handle, partETags));
+        return scheme + storedName;
+    }
+
+    @Override
+    public void abortChunked(String fileId, String storedName, String handle) {
+        s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, storedName, handle));
+    }
+
+    public String locationOf(String key) {
+        return scheme + key;
+    }
+
+    public boolean owns(String location) {
+        return location.startsWith(scheme);
+    }
+
+    /**
+     * A URL that lets a client PUT one object directly. The content type, length and user
+     * metadata are signed, so the client must send them as the same headers and S3 refuses
+     * a body of any other length.
+     */
+    public URL presignPut(String key, String contentType, long contentLength, Map<String, String> userMetadata,
+                          Date expiration) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.PUT)
+            .withExpiration(expiration)
+            .withContentType(contentType);
+        request.putCustomRequestHeader(Headers.CONTENT_LENGTH, String.valueOf(contentLength));
+        userMetadata.forEach((name, value) -> request.putCustomRequestHeader(Headers.S3_USER_METADATA_PREFIX + name, value));
+        return s3Client.generatePresignedUrl(request);
+    }
+
+    public URL presignGet(String location, String contentType, String contentDisposition, Date expiration) {
+        ResponseHeaderOverrides overrides = new ResponseHeaderOverrides()
+            .withContentType(contentType)
+            .withContentDisposition(contentDisposition);
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, keyOf(location), HttpMethod.GET)
+            .withExpiration(expiration)
+            .withResponseHeaders(overrides);
+        return s3Client.generatePresignedUrl(request);
+    }
+
+    public Optional<ObjectMetadata> head(String key) {
+        try {
+            return Optional.of(s3Client.getObjectMetadata(bucketName, key));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    public String copy(String sourceKey, String key) {
+        s3Client.copyObject(bucketName, sourceKey, bucketName, key);
+        return scheme + key;
+    }
+
+    /**
+     * Locations of the objects under {@code prefix} last modified before {@code cutoff}.
+     */
+    public List<String> listModifiedBefore(String prefix, Date cutoff) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+            .withBucketName(bucketName)
+            .withPrefix(prefix);
+        List<String> locations = new ArrayList<>();
+        ListObjectsV2Result result;
+        do {
+            result = s3Client.listObjectsV2(request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (summary.getLastModified().before(cutoff)) {
+                    locations.add(scheme + summary.getKey());
+                }
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        return locations;
+    }
+
+    private String keyOf(String location) {
+        return location.substring(scheme.length());
+    }
+}
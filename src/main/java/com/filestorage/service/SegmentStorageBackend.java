@@ -0,0 +1,318 @@
+package com.filestorage.service;
+
+import com.filestorage.config.FileStorageConfiguration;
+import com.filestorage.db.SegmentEntryDAO;
+import com.filestorage.model.FileMetadata;
+import com.filestorage.model.SegmentEntry;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs small objects into large append-only segment files, Haystack style, so millions of
+ * tiny uploads cost a handful of files instead of one file or S3 object each. segment_entry
+ * maps every object to (segment, offset, length) and a read is one positional read.
+ * Deletes only drop the index row; a background compactor rewrites sealed segments whose
+ * live bytes have fallen below the compaction threshold and then removes them.
+ * Segment files live on the local disk of the node that wrote them, so the store is meant for
+ * a single node; segment ids are allocated by the database so that a second node could never
+ * reuse an id and have its entries compacted against the wrong file.
+ */
+public class SegmentStorageBackend implements StorageBackend, Managed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentStorageBackend.class);
+    public static final String NAME = "segment";
+    private static final String SCHEME = "segment://";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAX_DELETE_BATCH = 1000;
+
+    private final SegmentEntryDAO segmentEntryDAO;
+    private final File directory;
+    private final long segmentSize;
+    private final int maxEntrySize;
+    private final double compactionThreshold;
+    private final Duration compactionInterval;
+    private final Duration gracePeriod;
+    // Positional reads and writes are safe to share, so each segment is opened once
+    private final ConcurrentHashMap<Long, FileChannel> channels = new ConcurrentHashMap<>();
+    private final Object appendLock = new Object();
+    private long activeSegmentId;
+    private long activeSize;
+    private ScheduledExecutorService scheduler;
+
+    public SegmentStorageBackend(FileStorageConfiguration.SegmentStoreConfig config,
+                                 SegmentEntryDAO segmentEntryDAO) throws IOException {
+        this.segmentEntryDAO = segmentEntryDAO;
+        this.directory = new File(config.getBasePath()).getAbsoluteFile();
+        this.segmentSize = config.getSegmentSize();
+        this.maxEntrySize = config.getMaxEntrySize();
+        this.compactionThreshold = config.getCompactionThreshold();
+        this.compactionInterval = config.getCompactionInterval();
+        this.gracePeriod = config.getCompactionGracePeriod();
+
+        Files.createDirectories(directory.toPath());
+        // Segments of earlier runs are sealed, bytes a crash left past their last indexed entry are garbage
+        long lastSegmentId = 0;
+        for (long segmentId : listSegments()) {
+            lastSegmentId = Math.max(lastSegmentId, segmentId);
+        }
+        // Skips ids below segments numbered before the database allocated them
+        long segmentId;
+        do {
+            segmentId = segmentEntryDAO.allocateSegmentId();
+        } while (segmentId <= lastSegmentId);
+        openSegment(segmentId);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public String store(InputStream inputStream, FileMetadata metadata, String storedName) throws IOException {
+        byte[] data = IOUtils.toByteArray(new BoundedInputStream(inputStream, maxEntrySize + 1L));
+        if (data.length > maxEntrySize) {
+            throw new IOException("Object exceeds the segment store's maximum entry size of " + maxEntrySize + " bytes");
+        }
+        segmentEntryDAO.insert(append(metadata.getId(), data));
+        return SCHEME + metadata.getId();
+    }
+
+    @Override
+    public String stage(InputStream inputStream, FileMetadata metadata) throws IOException {
+        return store(inputStream, metadata, null);
+    }
+
+    @Override
+    public String promote(String stagingLocation, String blobName) {
+        // Entries are addressed by id, there is no name to move
+        return stagingLocation;
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        SegmentEntry entry = find(location);
+        return new ByteArrayInputStream(read(entry, 0, entry.getEntryLength()));
+    }
+
+    @Override
+    public InputStream openRange(String location, long start, long length) throws IOException {
+        SegmentEntry entry = find(location);
+        long end = Math.min(start + length, entry.getEntryLength());
+        return new ByteArrayInputStream(read(entry, start, (int) Math.max(end - start, 0)));
+    }
+
+    @Override
+    public void delete(String location) {
+        segmentEntryDAO.deleteById(idOf(location));
+    }
+
+    @Override
+    public int getDeleteBatchSize() {
+        return MAX_DELETE_BATCH;
+    }
+
+    @Override
+    public Set<String> deleteAll(List<String> locations) {
+        List<String> ids = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            ids.add(idOf(location));
+        }
+        segmentEntryDAO.deleteByIds(ids);
+        return Set.of();
+    }
+
+    @Override
+    public boolean exists(String location) {
+        return segmentEntryDAO.findById(idOf(location)).isPresent();
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = compactionInterval.toMilliseconds();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        for (FileChannel channel : channels.values()) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    private SegmentEntry append(String id, byte[] data) throws IOException {
+        long segmentId;
+        long offset;
+        synchronized (appendLock) {
+            if (activeSize > 0 && activeSize + data.length > segmentSize) {
+                openSegment(segmentEntryDAO.allocateSegmentId());
+            }
+            segmentId = activeSegmentId;
+            offset = activeSize;
+            activeSize += data.length;
+        }
+
+        // Only the offset is reserved under the lock, concurrent appends write their bytes in parallel
+        FileChannel channel = channel(segmentId);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return new SegmentEntry(id, segmentId, offset, data.length);
+    }
+
+    private void openSegment(long segmentId) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segmentId),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.put(segmentId, channel);
+        activeSegmentId = segmentId;
+        activeSize = 0;
+    }
+
+    private byte[] read(SegmentEntry entry, long start, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileChannel channel = channel(entry.getSegmentId());
+        long position = entry.getEntryOffset() + start;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Segment " + entry.getSegmentId() + " ends inside entry " + entry.getId());
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    private FileChannel channel(long segmentId) throws IOException {
+        try {
+            return channels.computeIfAbsent(segmentId, id -> {
+                try {
+                    return FileChannel.open(segmentPath(id), StandardOpenOption.READ);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private SegmentEntry find(String location) throws FileNotFoundException {
+        return segmentEntryDAO.findById(idOf(location))
+            .orElseThrow(() -> new FileNotFoundException("No segment entry for " + location));
+    }
+
+    public void compact() throws IOException, InterruptedException {
+        long activeId;
+        synchronized (appendLock) {
+            activeId = activeSegmentId;
+        }
+        // A segment sealed moments ago may still have appends landing in it
+        long sealedBefore = System.currentTimeMillis() - gracePeriod.toMilliseconds();
+
+        for (long segmentId : listSegments()) {
+            Path path = segmentPath(segmentId);
+            if (segmentId >= activeId || Files.getLastModifiedTime(path).toMillis() > sealedBefore) {
+                continue;
+            }
+            long size = Files.size(path);
+            long live = segmentEntryDAO.sumLiveBytes(segmentId);
+            if (size > 0 && live >= size * compactionThreshold) {
+                continue;
+            }
+            compactSegment(segmentId);
+            LOGGER.info("Compacted segment {}: moved {} live of {} bytes", segmentId, live, size);
+        }
+    }
+
+    private void compactSegment(long segmentId) throws IOException, InterruptedException {
+        List<SegmentEntry> entries = segmentEntryDAO.findBySegment(segmentId);
+        do {
+            for (SegmentEntry entry : entries) {
+                SegmentEntry moved = append(entry.getId(), read(entry, 0, entry.getEntryLength()));
+                segmentEntryDAO.move(entry.getId(), segmentId, moved.getSegmentId(), moved.getEntryOffset());
+            }
+            // Readers that looked up the old offset just before the move can still finish
+            Thread.sleep(gracePeriod.toMilliseconds());
+            entries = segmentEntryDAO.findBySegment(segmentId);
+        } while (!entries.isEmpty());
+
+        FileChannel channel = channels.remove(segmentId);
+        if (channel != null) {
+            channel.close();
+        }
+        Files.deleteIfExists(segmentPath(segmentId));
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Segment compaction failed", e);
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segmentIds = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.toPath(), "*" + SEGMENT_SUFFIX)) {
+            for (Path path : entries) {
+                String name = path.getFileName().toString();
+                try {
+                    segmentIds.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file {} in segment directory", path);
+                }
+            }
+        }
+        segmentIds.sort(null);
+        return segmentIds;
+    }
+
+    private Path segmentPath(long segmentId) {
+        return new File(directory, String.format("%016d", segmentId) + SEGMENT_SUFFIX).toPath();
+    }
+
+    private static String idOf(String location) {
+        return location.substring(SCHEME.length());
+    }
+}
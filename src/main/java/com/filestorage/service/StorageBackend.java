@@ -0,0 +1,78 @@
+package com.filestorage.service;
+
+import com.filestorage.model.FileMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A place stored bytes can live. Every location a backend hands out starts with its scheme,
+ * so reads and deletes are routed by the location alone, while {@link PlacementPolicy}
+ * decides which backend receives a new upload.
+ */
+public interface StorageBackend {
+    /**
+     * Short name used in configuration and metric names, e.g. {@code s3}.
+     */
+    String getName();
+
+    /**
+     * Prefix of every location this backend owns, e.g. {@code s3://bucket/}.
+     */
+    String getScheme();
+
+    String store(InputStream inputStream, FileMetadata metadata, String storedName) throws IOException;
+
+    /**
+     * Stores an upload under a temporary name until its checksum is known.
+     */
+    String stage(InputStream inputStream, FileMetadata metadata) throws IOException;
+
+    /**
+     * Moves a staged upload to its blob name, derived from its checksum, and returns the new location.
+     */
+    String promote(String stagingLocation, String blobName) throws IOException;
+
+    InputStream open(String location) throws IOException;
+
+    InputStream openRange(String location, long start, long length) throws IOException;
+
+    void delete(String location) throws IOException;
+
+    boolean exists(String location);
+
+    /**
+     * How many locations one {@link #deleteAll(List)} call should be given.
+     */
+    default int getDeleteBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Deletes several locations and returns those that could not be removed.
+     */
+    default Set<String> deleteAll(List<String> locations) throws IOException {
+        for (String location : locations) {
+            delete(location);
+        }
+        return Set.of();
+    }
+
+    /**
+     * The file holding a location's bytes, for zero-copy transfers, if it is a whole file on local disk.
+     */
+    default Optional<Path> localPath(String location) {
+        return Optional.empty();
+    }
+
+    /**
+     * Whether reads cross the network, which makes them worth prefetching.
+     */
+    default boolean isRemote() {
+        return false;
+    }
+}
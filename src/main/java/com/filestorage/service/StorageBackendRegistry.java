@@ -0,0 +1,59 @@
+package com.filestorage.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The storage backends running in this node, looked up by name for placement and by
+ * location scheme for everything else. The first backend registered is the default.
+ */
+public class StorageBackendRegistry {
+    private final Map<String, StorageBackend> backends = new LinkedHashMap<>();
+
+    public StorageBackendRegistry(List<StorageBackend> backends) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage backend is required");
+        }
+        for (StorageBackend backend : backends) {
+            if (this.backends.putIfAbsent(backend.getName(), backend) != null) {
+                throw new IllegalArgumentException("Duplicate storage backend: " + backend.getName());
+            }
+        }
+    }
+
+    public Set<String> getNames() {
+        return backends.keySet();
+    }
+
+    public StorageBackend getDefault() {
+        return backends.values().iterator().next();
+    }
+
+    public StorageBackend get(String name) {
+        StorageBackend backend = backends.get(name);
+        if (backend == null) {
+            throw new IllegalArgumentException("Unknown storage backend: " + name);
+        }
+        return backend;
+    }
+
+    public Optional<StorageBackend> find(String location) {
+        StorageBackend match = null;
+        for (StorageBackend backend : backends.values()) {
+            // The longest scheme wins, so one backend can own a subtree of another's
+            if (location.startsWith(backend.getScheme())
+                && (match == null || backend.getScheme().length() > match.getScheme().length())) {
+                match = backend;
+            }
+        }
+        return Optional.ofNullable(match);
+    }
+
+    public StorageBackend forLocation(String location) {
+        return find(location)
+            .orElseThrow(() -> new IllegalArgumentException("Unsupported storage location: " + location));
+    }
+}
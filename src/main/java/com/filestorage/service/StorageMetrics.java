@@ -0,0 +1,134 @@
+package com.filestorage.service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timers, transferred-size histograms and in-flight counts per storage backend and
+ * operation, so a slow transfer can be pinned on one backend, e.g. S3 or the local disk.
+ */
+public class StorageMetrics {
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+    public static final String DELETE = "delete";
+
+    private static final List<String> OPERATIONS = List.of(UPLOAD, DOWNLOAD, DELETE);
+
+    private final Map<String, Timer> timers = new HashMap<>();
+    private final Map<String, Histogram> sizes = new HashMap<>();
+    private final Map<String, Counter> inFlight = new HashMap<>();
+
+    interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    public StorageMetrics(Collection<String> backends) {
+        for (String backend : backends) {
+            inFlight.put(backend, new Counter());
+            for (String operation : OPERATIONS) {
+                timers.put(key(backend, operation), new Timer());
+                sizes.put(key(backend, operation), new Histogram(new ExponentiallyDecayingReservoir()));
+            }
+        }
+    }
+
+    public Sample start(String backend, String operation) {
+        inFlight.get(backend).inc();
+        return new Sample(backend, operation);
+    }
+
+    /**
+     * Opens a stream whose sample ends when the caller closes it, so the timer covers the
+     * whole read rather than just the open.
+     */
+    InputStream open(String backend, String operation, Opener opener) throws IOException {
+        Sample sample = start(backend, operation);
+        InputStream in;
+        try {
+            in = opener.open();
+        } catch (IOException | RuntimeException e) {
+            sample.stop(-1);
+            throw e;
+        }
+        return new FilterInputStream(in) {
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                int result = super.read();
+                if (result != -1) {
+                    count++;
+                }
+                return result;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int result = super.read(b, off, len);
+                if (result > 0) {
+                    count += result;
+                }
+                return result;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    sample.stop(count);
+                }
+            }
+        };
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        String prefix = MetricRegistry.name(FileStorageService.class);
+        timers.forEach((key, timer) -> metrics.register(MetricRegistry.name(prefix, key), timer));
+        sizes.forEach((key, histogram) -> metrics.register(MetricRegistry.name(prefix, key + "-bytes"), histogram));
+        inFlight.forEach((backend, counter) -> metrics.register(MetricRegistry.name(prefix, backend, "in-flight"), counter));
+    }
+
+    private static String key(String backend, String operation) {
+        return backend + "." + operation;
+    }
+
+    public final class Sample {
+        private final String backend;
+        private final String operation;
+        private final Timer.Context context;
+        private boolean stopped;
+
+        private Sample(String backend, String operation) {
+            this.backend = backend;
+            this.operation = operation;
+            this.context = timers.get(key(backend, operation)).time();
+        }
+
+        /**
+         * Ends the sample; pass a negative size when nothing was transferred.
+         */
+        public void stop(long bytes) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            context.stop();
+            if (bytes >= 0) {
+                sizes.get(key(backend, operation)).update(bytes);
+            }
+            inFlight.get(backend).dec();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.filestorage.service;
+
+import java.io.IOException;
+
+public class UploadRejectedException extends IOException {
+
+    public enum Reason {
+        MIME_TYPE_NOT_ALLOWED,
+        FILE_TOO_LARGE,
+        QUOTA_EXCEEDED
+    }
+
+    private final Reason reason;
+
+    public UploadRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
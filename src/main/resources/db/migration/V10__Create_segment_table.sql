@@ -0,0 +1,8 @@
+-- Segment ids are handed out here, so two nodes can never both write a segment with the same id
+CREATE TABLE segment (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Continue after the segments numbered locally so far
+INSERT INTO segment (id) SELECT MAX(segment_id) FROM segment_entry HAVING MAX(segment_id) IS NOT NULL;
@@ -0,0 +1,10 @@
+CREATE TABLE blob_reference (
+    checksum VARCHAR(64) PRIMARY KEY,
+    storage_location VARCHAR(500) NOT NULL,
+    file_size BIGINT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 0,
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Checksums are filled in for every upload so duplicate content can be found by hash
+CREATE INDEX idx_file_metadata_checksum ON file_metadata(checksum);
@@ -0,0 +1,11 @@
+-- Composite indexes matching the (upload_date DESC, id DESC) keyset ordering
+CREATE INDEX idx_file_metadata_uploaded_by_keyset ON file_metadata(uploaded_by, upload_date, id);
+CREATE INDEX idx_file_metadata_mime_type_keyset ON file_metadata(mime_type, upload_date, id);
+CREATE INDEX idx_file_metadata_is_public_keyset ON file_metadata(is_public, upload_date, id);
+CREATE INDEX idx_file_metadata_upload_date_keyset ON file_metadata(upload_date, id);
+
+-- The single-column indexes are now left prefixes of the composites above
+DROP INDEX idx_file_metadata_uploaded_by ON file_metadata;
+DROP INDEX idx_file_metadata_mime_type ON file_metadata;
+DROP INDEX idx_file_metadata_is_public ON file_metadata;
+DROP INDEX idx_file_metadata_upload_date ON file_metadata;
@@ -0,0 +1,2 @@
+-- Sniffed type of the blob, reused when a repeat upload is registered by checksum only
+ALTER TABLE blob_reference ADD COLUMN mime_type VARCHAR(100) NOT NULL DEFAULT 'application/octet-stream';
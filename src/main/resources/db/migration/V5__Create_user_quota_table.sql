@@ -0,0 +1,10 @@
+CREATE TABLE user_quota (
+    uploaded_by VARCHAR(255) PRIMARY KEY,
+    used_bytes BIGINT NOT NULL DEFAULT 0,
+    file_count BIGINT NOT NULL DEFAULT 0,
+    updated_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+-- Seed the ledger from existing rows so usage is correct from the first upload
+INSERT INTO user_quota (uploaded_by, used_bytes, file_count)
+SELECT uploaded_by, SUM(file_size), COUNT(*) FROM file_metadata GROUP BY uploaded_by;
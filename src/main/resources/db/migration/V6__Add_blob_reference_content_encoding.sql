@@ -0,0 +1,2 @@
+-- Blobs may be stored compressed; repeat uploads must inherit the encoding of the stored bytes
+ALTER TABLE blob_reference ADD COLUMN content_encoding VARCHAR(50);
@@ -0,0 +1,3 @@
+-- MATCH over several columns needs a FULLTEXT index on exactly that column list;
+-- the per-column indexes from V1 can only rank one column at a time
+CREATE FULLTEXT INDEX idx_file_metadata_search ON file_metadata(original_name, tags, description);
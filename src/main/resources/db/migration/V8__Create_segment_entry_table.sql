@@ -0,0 +1,11 @@
+-- Index of the packed segment store: where each small object lives inside a segment file
+CREATE TABLE segment_entry (
+    id VARCHAR(36) PRIMARY KEY,
+    segment_id BIGINT NOT NULL,
+    entry_offset BIGINT NOT NULL,
+    entry_length INT NOT NULL,
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- The compactor sums and rewrites the live entries of one segment at a time
+CREATE INDEX idx_segment_entry_segment ON segment_entry(segment_id);
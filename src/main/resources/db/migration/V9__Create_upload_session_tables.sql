@@ -0,0 +1,25 @@
+-- Resumable uploads survive restarts, so their progress lives here rather than in memory
+CREATE TABLE upload_session (
+    id VARCHAR(36) PRIMARY KEY,
+    uploaded_by VARCHAR(255) NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    upload_length BIGINT NOT NULL,
+    chunk_size INT NOT NULL,
+    backend VARCHAR(50) NOT NULL,
+    upload_handle VARCHAR(1024),
+    status VARCHAR(20) NOT NULL DEFAULT 'OPEN',
+    created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_date TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_upload_session_expires ON upload_session(expires_date);
+
+-- One row per received chunk; chunks may arrive in any order and be re-sent
+CREATE TABLE upload_chunk (
+    session_id VARCHAR(36) NOT NULL,
+    chunk_index INT NOT NULL,
+    chunk_length INT NOT NULL,
+    etag VARCHAR(100),
+    PRIMARY KEY (session_id, chunk_index),
+    FOREIGN KEY (session_id) REFERENCES upload_session(id) ON DELETE CASCADE
+);